@@ -1,109 +1,225 @@
-import java.io.BufferedReader;
-import java.io.FileReader;
-import java.io.FileWriter;
+import java.io.BufferedWriter;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
 import java.time.LocalDate;
 import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.Queue;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Predicate;
+import java.util.stream.Stream;
 
 public class AnnualFlightScheduler {
-    static HashMap<LocalDate, ArrayList<Flight>> flightsByDate; // Stores flights organized by date
+    static ConcurrentSkipListMap<LocalDate, ArrayList<Flight>> flightsByDate; // Stores flights sorted by date; each day's list is fixed once loaded
+    static ConcurrentHashMap<String, Flight> flightsById; // Resolves a flight ID to its flight without parsing it
+    static FlightInventory inventory = new FlightInventory(); // Counters of every flight, laid out by date once the snapshot is loaded
+    static FlightPartitions partitions; // Loads and evicts months of a partitioned snapshot; null for the other formats
+    static AvailabilityCache availabilityCache = new AvailabilityCache(AvailabilityCache.DEFAULT_CAPACITY); // Rendered searches per date range and filter
+    static final FlightEventStream events = new FlightEventStream(FlightEventStream.DEFAULT_CAPACITY); // Changes to seat inventory, for in-process subscribers; outlives schedulers
     static DateTimeFormatter formatter = DateTimeFormatter.ofPattern("yyyy-MM-dd"); // Date formatter for parsing and formatting dates
     private static final String FILE_NAME = "C:\\Users\\Austin\\Desktop\\flight\\flights.csv"; // Path to the CSV file storing flight data
+    private static final String JOURNAL_FILE_NAME = "C:\\Users\\Austin\\Desktop\\flight\\flights.journal"; // Path to the booking journal
+    static final String SEQ_MARKER = "#journal-seq="; // Header suffix recording the last journal record in the snapshot
+    static final long HOLD_TICK_MS = Long.getLong("flight.holds.tickMs", 100); // Resolution of seat hold expiry
+    BookingJournal journal; // Append-only log of changes made since the last snapshot
+    ConcurrentHashMap<String, Passenger> passengersByPassport = new ConcurrentHashMap<>(); // One Passenger object per passport number
+    private long snapshotSeq; // Last journal record already contained in the snapshot
+    private final String snapshotFileName; // Snapshot file used by this scheduler
+    private final SnapshotFormat snapshotFormat; // Format of the snapshot file
+    private final AtomicBoolean checkpointRunning = new AtomicBoolean(); // Set while a background checkpoint is running
+    ConcurrentHashMap<Long, SeatHold> holds = new ConcurrentHashMap<>(); // Seat holds that are still held, by id
+    private final AtomicLong holdIds = new AtomicLong(System.currentTimeMillis()); // Last hold id given out; starts at the clock so ids are not reused after a restart
+    private final TimingWheel<SeatHold> holdTimers = new TimingWheel<>(HOLD_TICK_MS, System.currentTimeMillis()); // Expiry of the held seats
+    private Thread holdExpirer; // Expires holds once per tick; started by the first hold
+
+    // Formats the flight inventory can be snapshotted in; a partitioned snapshot is a directory of monthly binary files
+    // that are loaded on first use (see FlightPartitions)
+    public enum SnapshotFormat {
+        CSV, BINARY, PARTITIONED
+    }
 
     public AnnualFlightScheduler() {
-        flightsByDate = new HashMap<>();
-        loadFlightsFromCsv(); // Load flight data from the CSV file when the scheduler is created
-    }
-
-    // Loads flight data from the CSV file
-    private void loadFlightsFromCsv() {
-        try (BufferedReader reader = new BufferedReader(new FileReader(FILE_NAME))) {
-            String line;
-            reader.readLine(); // Skip the header line
-
-            while ((line = reader.readLine()) != null) {
-                String[] parts = line.split(",");
-
-                if (parts.length >= 8) {
-                    String flightID = parts[0];
-                    LocalDate date;
-                    String confirmedPassengersStr = parts[3];
-                    String waitlistedPassengersStr = parts[4];
-
-                    try {
-                        date = LocalDate.parse(parts[1]); // Parse the date from the CSV
-                    } catch (Exception e) {
-                        System.err.println("Invalid date format in CSV: " + parts[1]);
-                        continue; // Skip this line if the date format is invalid
-                    }
+        this(FILE_NAME, JOURNAL_FILE_NAME);
+    }
 
-                    int confirmedSeats = 0;
-                    int emptySeats = Flight.maxSeats;
+    public AnnualFlightScheduler(String csvFileName, String journalFileName) {
+        this(csvFileName, journalFileName, SnapshotFormat.CSV);
+    }
 
-                    try {
-                        confirmedSeats = Integer.parseInt(parts[5]);
-                        emptySeats = Integer.parseInt(parts[6]);
+    public AnnualFlightScheduler(String snapshotFileName, String journalFileName, SnapshotFormat snapshotFormat) {
+        this.snapshotFileName = snapshotFileName;
+        this.snapshotFormat = snapshotFormat;
+        flightsByDate = new ConcurrentSkipListMap<>();
+        flightsById = new ConcurrentHashMap<>();
+        inventory = new FlightInventory();
+        partitions = null;
+        availabilityCache = new AvailabilityCache(AvailabilityCache.DEFAULT_CAPACITY);
+        loadFlights(); // Load flight data from the snapshot when the scheduler is created
+        journal = new BookingJournal(journalFileName);
+        replayJournal(); // Apply the changes made after the snapshot was written
+        if (partitions != null) {
+            partitions.startEvicting();
+        }
+        if (!holds.isEmpty()) {
+            startHoldExpirer(); // Holds whose deadline passed while the scheduler was down expire right away
+        }
+    }
 
-                        // Check for data inconsistencies in seat numbers
-                        if (confirmedSeats + emptySeats != Flight.maxSeats || emptySeats < 0) {
-                            System.err.println("Seat data inconsistency detected in flight: " + flightID);
-                            confirmedSeats = Math.min(confirmedSeats, Flight.maxSeats);
-                            emptySeats = Flight.maxSeats - confirmedSeats;
-                        }
-                    } catch (NumberFormatException e) {
-                        System.err.println("Failed to parse seat numbers for flight: " + flightID);
-                        confirmedSeats = 0;
-                        emptySeats = Flight.maxSeats; 
-                    }
+    // Loads flight data from the snapshot file
+    private void loadFlights() {
+        long start = Metrics.ENABLED ? System.nanoTime() : 0;
+        try {
+            List<Flight> flights;
+            if (snapshotFormat == SnapshotFormat.PARTITIONED) {
+                partitions = new FlightPartitions(this, snapshotFileName); // Months are loaded when first used
+                inventory = partitions.getInventory();
+                flights = new ArrayList<>();
+                snapshotSeq = partitions.getIndexSeq();
+            } else if (snapshotFormat == SnapshotFormat.BINARY) {
+                BinarySnapshot loader = new BinarySnapshot(this);
+                flights = loader.load(snapshotFileName);
+                snapshotSeq = loader.getSnapshotSeq();
+            } else {
+                CsvFlightLoader loader = new CsvFlightLoader(this, snapshotFileName);
+                flights = loader.load();
+                snapshotSeq = loader.getSnapshotSeq();
+            }
+            addLoadedFlights(flights);
+            if (partitions == null) {
+                inventory = FlightInventory.layout(getAllFlights()); // Give each day's flights consecutive slots
+            }
+        } catch (IOException e) {
+            System.err.println("Failed to read snapshot file: " + e.getMessage());
+        }
+        if (Metrics.ENABLED) {
+            Metrics.SNAPSHOT_LOAD.record(System.nanoTime() - start);
+        }
+    }
 
-                    Flight flight = new Flight(flightID);
-                    try {
-                        flight.setConfirmedSeats(confirmedSeats);
-                        flight.setEmptySeats(emptySeats);
-                    } catch (IllegalArgumentException e) {
-                        System.err.println("Invalid seat values for flight: " + flightID + ". Skipping this flight.");
-                        continue; // Skip this flight if seat values are invalid
-                    }
+    // Adds loaded flights to the maps; flights of one date must be adjacent and no date may already be loaded
+    void addLoadedFlights(List<Flight> flights) {
+        ArrayList<Flight> dailyFlights = null;
+        for (Flight flight : flights) {
+            // Flights are grouped by date, so the map is only consulted when the date changes
+            if (dailyFlights == null || !dailyFlights.get(0).getDate().equals(flight.getDate())) {
+                dailyFlights = flightsByDate.computeIfAbsent(flight.getDate(), k -> new ArrayList<>());
+            }
+            dailyFlights.add(flight); // Add the flight to the map
+            if (flightsById.putIfAbsent(flight.flightID, flight) != null) {
+                System.err.println("Duplicate flight ID in snapshot: " + flight.flightID);
+            }
+        }
+    }
 
-                    // Parse the lists of confirmed and waitlisted passengers
-                    List<Passenger> confirmedPassengersList = parsePassengersList(confirmedPassengersStr);
-                    List<Passenger> waitlistedPassengersList = parsePassengersList(waitlistedPassengersStr);
-
-                    flight.confirmedTicketList.addAll(confirmedPassengersList);
-                    flight.waitingList.addAll(waitlistedPassengersList);
-                    
-                    flightsByDate.computeIfAbsent(date, k -> new ArrayList<>()).add(flight); // Add the flight to the map
-                    flight.processWaitlist(); // Process the waitlist for this flight
-                    
-                    // Create and assign tickets to passengers
-                    for (Passenger p : flight.confirmedTicketList) {
-                        Ticket ticket = new Ticket(p, flight);
-                        ticket.setStatus("confirmed");
-                        p.addTicketToBucket(ticket);
-                    }
-                    
-                    for (Passenger p : flight.waitingList) {
-                        Ticket ticket = new Ticket(p, flight);
-                        ticket.setStatus("waiting list");
-                        p.addTicketToBucket(ticket);
-                    }
+    // Builds a flight from one CSV row; numeric fields are -1 when malformed. Returns null if the row must be skipped
+    Flight createFlight(String flightID, LocalDate date, int confirmedSeats, int emptySeats, int capacity,
+                        int businessSeats, int heldSeats, String confirmedPassengersStr, String waitlistedPassengersStr) {
+        Flight flight = createFlight(flightID, date, confirmedSeats, emptySeats, capacity, businessSeats);
+        if (flight != null) {
+            // Parse the lists of confirmed and waitlisted passengers and give each one a ticket
+            loadPassengers(flight, confirmedPassengersStr, Ticket.Status.CONFIRMED);
+            loadPassengers(flight, waitlistedPassengersStr, Ticket.Status.WAITING_LIST);
+            finishLoadedFlight(flight, heldSeats);
+        }
+        return flight;
+    }
 
-                } else {
-                    System.err.println("CSV format error: insufficient fields in line: " + line);
-                }
-            }
-        } catch (IOException e) {
-            System.err.println("Failed to read CSV file: " + e.getMessage());
+    // Builds an empty flight from snapshot values, repairing inconsistent seat counts. Returns null if it must be skipped
+    Flight createFlight(String flightID, LocalDate date, int confirmedSeats, int emptySeats, int capacity, int businessSeats) {
+        // Capacity columns are optional so that older files still load with the default size
+        if (capacity <= 0 || businessSeats < 0 || businessSeats > capacity) {
+            System.err.println("Invalid capacity for flight: " + flightID + ". Using the default.");
+            capacity = Flight.defaultSeats;
+            businessSeats = 0;
+        }
+
+        if (confirmedSeats < 0 || emptySeats < 0) {
+            System.err.println("Failed to parse seat numbers for flight: " + flightID);
+            confirmedSeats = 0;
+            emptySeats = capacity; 
+        } else if (confirmedSeats + emptySeats != capacity) {
+            // Check for data inconsistencies in seat numbers
+            System.err.println("Seat data inconsistency detected in flight: " + flightID);
+            confirmedSeats = Math.min(confirmedSeats, capacity);
+            emptySeats = capacity - confirmedSeats;
+        }
+
+        Flight flight = new Flight(flightID, date, capacity - businessSeats, businessSeats);
+        try {
+            flight.setConfirmedSeats(confirmedSeats);
+            flight.setEmptySeats(emptySeats);
+        } catch (IllegalArgumentException e) {
+            System.err.println("Invalid seat values for flight: " + flightID + ". Skipping this flight.");
+            return null; // Skip this flight if seat values are invalid
         }
+        return flight;
     }
 
-    // Parses a string of passenger data into a list of Passenger objects
-    private List<Passenger> parsePassengersList(String passengersStr) {
-        List<Passenger> passengerList = new ArrayList<>();
+    // Puts a loaded passenger on a flight's manifest with a ticket; seat is -1 when none is recorded
+    void addLoadedPassenger(Flight flight, Passenger passenger, Ticket.Status status, int seat, SeatMap.Cabin cabin,
+                            Ticket.LoyaltyTier loyaltyTier) {
+        if (passenger.findTicket(flight) != null) {
+            System.err.println("Duplicate passenger " + passenger.getPassportNum() + " on flight: " + flight.flightID);
+            return;
+        }
+        Ticket ticket = new Ticket(passenger, flight, cabin);
+        ticket.setStatus(status);
+        ticket.setLoyaltyTier(loyaltyTier);
+        if (seat >= 0 && flight.seatMap.occupy(seat)) {
+            ticket.setSeat(seat);
+            ticket.setCabin(flight.seatMap.cabinOf(seat));
+        }
+        passenger.restoreTicket(ticket);
+
+        if (status == Ticket.Status.CONFIRMED) {
+            flight.addToConfirmedList(ticket);
+        } else {
+            flight.addWaitlistedTicket(ticket);
+        }
+    }
+
+    // Seats confirmed passengers that have no seat yet and promotes the waitlist of a freshly loaded flight. The seats
+    // that were held when the snapshot was taken are left free for the holds that the journal replays next.
+    void finishLoadedFlight(Flight flight, int heldSeats) {
+        for (Ticket ticket : flight.confirmedTicketList) {
+            flight.assignSeat(ticket); // Seat passengers whose seat was missing or already taken
+        }
+        flight.heldSeats = heldSeats;
+        flight.processWaitlist(); // Process the waitlist for this flight
+        flight.heldSeats = 0;
+        flight.publishLoadedView();
+    }
+
+    // Returns the passenger with this passport number, creating and indexing it on first sight. In the partitioned
+    // format every month the passenger has booked is loaded first, so that all their tickets count against the limit.
+    public Passenger registerPassenger(String passportNum, String name) {
+        if (partitions != null) {
+            partitions.loadPassenger(passportNum);
+        }
+        return registerLoadedPassenger(passportNum, name);
+    }
+
+    // Like registerPassenger but never loads a month; for loaders and for callers that hold a flight lock
+    Passenger registerLoadedPassenger(String passportNum, String name) {
+        return passengersByPassport.computeIfAbsent(passportNum, k -> new Passenger(passportNum, name));
+    }
+
+    // Parses a string of passenger data, e.g. "Name(passport)@12", "Name(passport)@B" or "Name(passport)@B#GOLD",
+    // onto the flight's manifest
+    private void loadPassengers(Flight flight, String passengersStr, Ticket.Status status) {
         if (passengersStr != null && !passengersStr.trim().isEmpty()) {
             String[] passengers = passengersStr.split(";");
             for (String passengerStr : passengers) {
@@ -115,116 +231,766 @@ public class AnnualFlightScheduler {
                     if (startIndex > 0 && endIndex > startIndex) {
                         String name = passengerStr.substring(0, startIndex).trim();
                         String passportNum = passengerStr.substring(startIndex + 1, endIndex).trim();
-                        Passenger passenger = new Passenger(passportNum, name);
-                        passengerList.add(passenger);
+                        String seatStr = passengerStr.substring(endIndex + 1).trim();
+                        Passenger passenger = registerLoadedPassenger(passportNum, name);
+
+                        Ticket.LoyaltyTier loyaltyTier = Ticket.LoyaltyTier.NONE;
+                        int tierIndex = seatStr.indexOf('#');
+                        if (tierIndex >= 0) {
+                            try {
+                                loyaltyTier = Ticket.LoyaltyTier.valueOf(seatStr.substring(tierIndex + 1));
+                            } catch (IllegalArgumentException e) {
+                                System.err.println("Invalid loyalty tier for passenger " + passportNum + " on flight: " + flight.flightID);
+                            }
+                            seatStr = seatStr.substring(0, tierIndex);
+                        }
+
+                        int seat = -1;
+                        SeatMap.Cabin cabin = SeatMap.Cabin.ECONOMY;
+                        if (seatStr.equals("@B")) {
+                            cabin = SeatMap.Cabin.BUSINESS;
+                        } else if (seatStr.startsWith("@")) {
+                            try {
+                                seat = Integer.parseInt(seatStr.substring(1)) - 1;
+                            } catch (NumberFormatException e) {
+                                System.err.println("Invalid seat for passenger " + passportNum + " on flight: " + flight.flightID);
+                            }
+                        }
+                        addLoadedPassenger(flight, passenger, status, seat, cabin, loyaltyTier);
                     }
                 }
             }
         }
-        return passengerList;
     }
 
 
-    // Searches for flights between two dates
+    // Searches for flights between two dates; the output comes from the availability cache
     public static void searchFlights(LocalDate date1, LocalDate date2) {
+        searchFlights(date1, date2, false);
+    }
+
+    // Searches for flights between two dates, optionally only those with empty seats; the output comes from the
+    // availability cache
+    public static void searchFlights(LocalDate date1, LocalDate date2, boolean vacantOnly) {
+        long start = Metrics.ENABLED ? System.nanoTime() : 0;
+        System.out.println("\nFlight for the Weeks: ");
+        System.out.println();
+        System.out.print(availabilityCache.get(date1, date2, vacantOnly));
+        if (Metrics.ENABLED) {
+            Metrics.SEARCH.record(System.nanoTime() - start);
+        }
+    }
+
+    // Prints the flights between two dates that match the filter, one block per date that has flights; rendered
+    // afresh each time, as an arbitrary filter cannot be cached
+    public static void searchFlights(LocalDate date1, LocalDate date2, Predicate<FlightView> filter) {
+        long start = Metrics.ENABLED ? System.nanoTime() : 0;
         System.out.println("\nFlight for the Weeks: ");
         System.out.println();
-        while (!date1.isAfter(date2)) {
-            ArrayList<Flight> temp = flightsByDate.get(date1);
-            if (temp != null) { 
-                for (int i = 0; i < temp.size(); i++) {
-                    System.out.println(temp.get(i));
+        System.out.print(renderFlights(date1, date2, filter));
+        if (Metrics.ENABLED) {
+            Metrics.SEARCH.record(System.nanoTime() - start);
+        }
+    }
+
+    // Renders the flights between two dates that match the filter, one block per date that has flights. Every flight
+    // is rendered as of the same version, without locking (see ReadView)
+    static String renderFlights(LocalDate date1, LocalDate date2, Predicate<FlightView> filter) {
+        StringBuilder sb = new StringBuilder();
+        if (date1.isAfter(date2)) {
+            return "";
+        }
+        loadRange(date1, date2);
+        String separator = System.lineSeparator();
+        try (ReadView readView = ReadView.open()) {
+            for (ArrayList<Flight> dailyFlights : flightsByDate.subMap(date1, true, date2, true).values()) {
+                for (Flight flight : dailyFlights) {
+                    FlightView view = readView.of(flight);
+                    if (view != null && filter.test(view)) {
+                        sb.append(view).append(separator);
+                    }
                 }
+                sb.append("-------------------------------------------------------------------------").append(separator);
             }
-            System.out.println("-------------------------------------------------------------------------");
-            date1 = date1.plusDays(1);
         }
+        return sb.toString();
     }
 
-    // Saves the current flight data to the CSV file
-    public void saveFlightsToCsv() {
-        try (FileWriter writer = new FileWriter(FILE_NAME)) {
-            writer.write("Flight ID,Date,Status,Confirmed Passengers," +
-                    "Waitlisted Passengers,Confirmed Seats,Empty Seats,Waitlist Count\n");
-    
-            for (LocalDate date : flightsByDate.keySet()) {
-                for (Flight flight : flightsByDate.get(date)) {
-                    String flightID = flight.flightID; 
-    
-                    String confirmedPassengersStr = getPassengerListString(flight.confirmedTicketList);
-                    String waitlistedPassengersStr = getPassengerListString(flight.waitingList);
-    
-                    writer.write(flightID + "," + date + ",Available," +
-                            confirmedPassengersStr + "," + waitlistedPassengersStr + "," +
-                            flight.getConfirmedSeats() + "," + flight.getEmptySeats() + "," +
-                            flight.getWaitlistCount() + "\n");
+    // Returns the flights between two dates that match the filter, in date order; nothing is read until the stream is consumed
+    public static Stream<Flight> findFlights(LocalDate date1, LocalDate date2, Predicate<Flight> filter) {
+        if (date1.isAfter(date2)) {
+            return Stream.empty();
+        }
+        loadRange(date1, date2);
+        return flightsByDate.subMap(date1, true, date2, true).values().stream()
+                .flatMap(ArrayList::stream)
+                .filter(filter);
+    }
+
+    // Returns every flight between two dates, in date order
+    public static Stream<Flight> findFlights(LocalDate date1, LocalDate date2) {
+        return findFlights(date1, date2, flight -> true);
+    }
+
+    // Loads the months of a partitioned snapshot that overlap the range; the other formats are always loaded
+    static void loadRange(LocalDate date1, LocalDate date2) {
+        if (partitions != null) {
+            partitions.loadRange(date1, date2);
+        }
+    }
+
+    // Like loadRange, but also keeps the months loaded until the returned pin is closed; for scans of inventory slots
+    static FlightPartitions.Pin pinRange(LocalDate date1, LocalDate date2) {
+        return partitions != null ? partitions.pinRange(date1, date2) : () -> { };
+    }
+
+    // Returns the date of the last scheduled flight, or the end of its month in the partitioned format; null without flights
+    static LocalDate lastScheduledDate() {
+        if (partitions != null) {
+            return partitions.lastDate();
+        }
+        return flightsByDate.isEmpty() ? null : flightsByDate.lastKey();
+    }
+
+    // Saves a consistent snapshot and retires the journal records it covers; returns whether the snapshot was written
+    public synchronized boolean checkpoint() {
+        long start = Metrics.ENABLED ? System.nanoTime() : 0;
+        if (partitions != null) {
+            // Only the months changed since they were loaded or written are saved, along with the passenger index
+            long seq = partitions.checkpoint();
+            if (seq >= 0) {
+                snapshotSeq = seq;
+                journal.dropRotated();
+            }
+            if (Metrics.ENABLED) {
+                Metrics.SNAPSHOT_SAVE.record(System.nanoTime() - start);
+            }
+            return seq >= 0;
+        }
+        List<Flight> flights = getAllFlights();
+        List<FlightSnapshot> snapshots = new ArrayList<>(flights.size());
+        long seq;
+
+        // Holding every flight lock freezes bookings just long enough to copy the flights and cut the journal
+        lockFlights(flights);
+        try {
+            journal.rotate();
+            seq = journal.getLastSeq();
+            carryHolds(); // Holds are not in the snapshot, so the new journal starts with them
+            for (Flight flight : flights) {
+                snapshots.add(new FlightSnapshot(flight));
+            }
+        } finally {
+            unlockFlights(flights);
+        }
+
+        boolean written = writeSnapshot(snapshotFileName, snapshotFormat, snapshots, seq);
+        if (written) {
+            snapshotSeq = seq;
+            journal.dropRotated();
+        }
+        if (Metrics.ENABLED) {
+            Metrics.SNAPSHOT_SAVE.record(System.nanoTime() - start);
+        }
+        return written;
+    }
+
+    // Writes a consistent copy of the inventory to another file, e.g. to convert between formats; the journal is untouched
+    public void exportSnapshot(String fileName, SnapshotFormat format) {
+        if (partitions != null) {
+            partitions.loadAll();
+        }
+        List<Flight> flights = getAllFlights();
+        List<FlightSnapshot> snapshots = new ArrayList<>(flights.size());
+        long seq;
+        lockFlights(flights);
+        try {
+            seq = journal.getLastSeq();
+            for (Flight flight : flights) {
+                snapshots.add(new FlightSnapshot(flight));
+            }
+        } finally {
+            unlockFlights(flights);
+        }
+        writeSnapshot(fileName, format, snapshots, seq);
+    }
+
+    // Takes a checkpoint once the journal has grown past its threshold, or failed and needs one to accept appends again
+    public void checkpointIfNeeded() {
+        if (journal.getRecordCount() >= BookingJournal.COMPACT_THRESHOLD || journal.isFailed()) {
+            checkpoint();
+        }
+    }
+
+    // Like checkpointIfNeeded, but takes the checkpoint on a background thread so the caller does not wait for it
+    private void checkpointInBackgroundIfNeeded() {
+        if ((journal.getRecordCount() >= BookingJournal.COMPACT_THRESHOLD || journal.isFailed())
+                && checkpointRunning.compareAndSet(false, true)) {
+            Thread thread = new Thread(() -> {
+                try {
+                    checkpointIfNeeded();
+                } finally {
+                    checkpointRunning.set(false);
+                }
+            }, "checkpoint");
+            thread.setDaemon(true);
+            thread.start();
+        }
+    }
+
+    // Takes a final snapshot and closes the journal; holds stay in the journal and keep their deadlines.
+    // Returns whether the snapshot was written, i.e. whether it now has every booking.
+    public boolean close() {
+        stopHoldExpirer();
+        boolean written = checkpoint();
+        journal.close();
+        return written;
+    }
+
+    // Returns every flight in date order
+    List<Flight> getAllFlights() {
+        List<Flight> flights = new ArrayList<>();
+        for (ArrayList<Flight> dailyFlights : flightsByDate.values()) {
+            flights.addAll(dailyFlights);
+        }
+        return flights;
+    }
+
+    // Locks flights in list order. Other code holds at most one flight lock, and in the partitioned format every caller
+    // holds the FlightPartitions monitor, so this cannot deadlock. Unlocking publishes what changed meanwhile (see Flight.unlock)
+    static void lockFlights(List<Flight> flights) {
+        for (Flight flight : flights) {
+            flight.lock.lock();
+        }
+    }
+
+    static void unlockFlights(List<Flight> flights) {
+        for (Flight flight : flights) {
+            flight.unlock();
+        }
+    }
+
+    // Writes a snapshot in the given format
+    private boolean writeSnapshot(String fileName, SnapshotFormat format, List<FlightSnapshot> snapshots, long seq) {
+        if (format != SnapshotFormat.CSV) {
+            try {
+                if (format == SnapshotFormat.PARTITIONED) {
+                    FlightPartitions.export(fileName, snapshots, seq);
+                } else {
+                    BinarySnapshot.write(fileName, snapshots, seq);
                 }
+                return true;
+            } catch (IOException e) {
+                System.err.println("Failed to write snapshot file: " + e.getMessage());
+                return false;
+            }
+        }
+        return saveFlightsToCsv(fileName, snapshots, seq);
+    }
+
+    // Saves flights to a CSV file; the file is synced and replaced atomically so a crash never leaves it torn
+    private boolean saveFlightsToCsv(String fileName, List<FlightSnapshot> snapshots, long seq) {
+        String tempFileName = fileName + ".tmp";
+        try (FileOutputStream file = new FileOutputStream(tempFileName);
+             BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(file, StandardCharsets.UTF_8))) {
+            writer.write("Flight ID,Date,Status,Confirmed Passengers," +
+                    "Waitlisted Passengers,Confirmed Seats,Empty Seats,Waitlist Count,Capacity,Business Seats,Held Seats," +
+                    SEQ_MARKER + seq + "\n");
+            for (FlightSnapshot snapshot : snapshots) {
+                writer.write(snapshot.toCsvRow());
             }
+            writer.flush();
+            file.getFD().sync(); // The rotated journal is deleted once this file is in place, so it must be on disk first
         } catch (IOException e) {
             System.err.println("Failed to write CSV file: " + e.getMessage());
+            return false;
+        }
+
+        try {
+            Files.move(Paths.get(tempFileName), Paths.get(fileName),
+                    StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            return true;
+        } catch (IOException e) {
+            System.err.println("Failed to replace CSV file: " + e.getMessage());
+            return false;
         }
     }
 
-    // Converts a list of passengers to a string representation
-    private String getPassengerListString(ArrayList<Passenger> passengers) {
-        StringBuilder sb = new StringBuilder();
-        for (int i = 0; i < passengers.size(); i++) {
-            Passenger passenger = passengers.get(i);
-            sb.append(passenger.getName()).append("(").append(passenger.getPassportNum()).append(")");
-            if (i < passengers.size() - 1) {
-                sb.append(";");  
-            }
+    // Records a booking in the journal; the caller holds the flight's lock so records follow the flight's order.
+    // The record is written and synced by the journal writer; wait for the returned future after releasing the lock.
+    public CompletableFuture<Long> recordBooking(Flight flight, Passenger passenger, SeatMap.Cabin cabin, Ticket.LoyaltyTier loyaltyTier) {
+        CompletableFuture<Long> durable = journal.appendAsync("BOOK", flight.flightID, passenger.getName(),
+                passenger.getPassportNum(), cabin.name(), loyaltyTier.name());
+        partitionChanged(flight, passenger.getPassportNum());
+        return durable;
+    }
+
+    // Records a cancellation in the journal; the caller holds the flight's lock and waits for the future after it
+    public CompletableFuture<Long> recordCancellation(Flight flight, Passenger passenger) {
+        CompletableFuture<Long> durable = journal.appendAsync("CANCEL", flight.flightID, passenger.getPassportNum());
+        partitionChanged(flight, null);
+        return durable;
+    }
+
+    // Waits for a journal record to become durable; returns false if it could not be written or synced, in which case
+    // the change it describes will not survive a restart. Call it after releasing the lock the record was appended under.
+    static boolean awaitDurable(CompletableFuture<Long> durable) {
+        try {
+            durable.join();
+            return true;
+        } catch (CompletionException e) {
+            return false;
         }
-        return sb.toString();
     }
-    
-    // Finds a ticket for a given flight and passenger (not used in the current code)
-    private Ticket findTicket(Flight flight, Passenger passenger, String status) {   
-        Ticket ticket = new Ticket(passenger, flight);
-        ticket.setStatus(status);   
-        return ticket;   
+
+    // Returns a new hold id
+    long nextHoldId() {
+        return holdIds.incrementAndGet();
     }
-    
-    // Retrieves passenger information based on passport number
-    public Passenger getPassengerInfo(String passportNum) {
-        for (LocalDate date : flightsByDate.keySet()) {
-            for (Flight flight : flightsByDate.get(date)) {
-                for (Passenger p : flight.confirmedTicketList) {
-                    if (p.getPassportNum().equals(passportNum)) {
-                        return p;
+
+    // Returns the hold with this id while it is held, or null
+    public SeatHold getHold(long id) {
+        return holds.get(id);
+    }
+
+    // Records a new hold in the journal and schedules its expiry; the caller holds the flight's lock and waits for
+    // the future after it
+    CompletableFuture<Long> recordHold(SeatHold hold) {
+        CompletableFuture<Long> durable = journal.appendAsync("HOLD", holdFields(hold));
+        holds.put(hold.id, hold);
+        holdTimers.add(hold, hold.deadline);
+        startHoldExpirer();
+        return durable;
+    }
+
+    // Records a confirmed hold in the journal as a booking of the held seat; the caller holds the flight's lock and
+    // waits for the future after it
+    CompletableFuture<Long> recordHoldConfirmed(SeatHold hold, Passenger passenger) {
+        CompletableFuture<Long> durable = journal.appendAsync("BOOK", hold.flight.flightID, passenger.getName(),
+                passenger.getPassportNum(), hold.cabin.name(), Ticket.LoyaltyTier.NONE.name(), Long.toString(hold.id));
+        holdEnded(hold);
+        partitionChanged(hold.flight, passenger.getPassportNum());
+        return durable;
+    }
+
+    // Records a released or expired hold in the journal; the caller holds the flight's lock
+    CompletableFuture<Long> recordHoldReleased(SeatHold hold) {
+        CompletableFuture<Long> durable = journal.appendAsync("RELEASE", hold.flight.flightID, Long.toString(hold.id));
+        holdEnded(hold);
+        partitionChanged(hold.flight, null); // The freed seat may have gone to the waiting list
+        return durable;
+    }
+
+    private static String[] holdFields(SeatHold hold) {
+        return new String[]{hold.flight.flightID, Long.toString(hold.id), hold.cabin.name(), Integer.toString(hold.seat),
+                Long.toString(hold.deadline)};
+    }
+
+    private void holdEnded(SeatHold hold) {
+        holds.remove(hold.id, hold);
+        holdTimers.cancel(hold);
+    }
+
+    // Appends every active hold to a freshly rotated journal, so that a snapshot without holds plus the new journal
+    // restores them; the caller holds every flight lock
+    void carryHolds() {
+        for (SeatHold hold : holds.values()) {
+            journal.append("HOLD", holdFields(hold));
+        }
+    }
+
+    // Releases the holds whose deadline has passed and promotes waitlisted passengers into the freed seats
+    void expireHolds() {
+        for (SeatHold hold : holdTimers.advance(System.currentTimeMillis())) {
+            Flight flight = hold.flight;
+            flight.lock.lock();
+            try {
+                if (flight.removeHold(hold, SeatHold.Status.EXPIRED)) {
+                    recordHoldReleased(hold); // Nobody waits on an expiry; a failed write is reported by the journal
+                    if (Metrics.ENABLED) {
+                        Metrics.HOLDS_EXPIRED.increment();
                     }
                 }
-                for (Passenger p : flight.waitingList) {
-                    if (p.getPassportNum().equals(passportNum)) {
-                        return p;
+            } finally {
+                flight.unlock();
+            }
+        }
+        checkpointInBackgroundIfNeeded();
+    }
+
+    // Starts the thread that advances the hold timers every tick, unless it is running
+    private synchronized void startHoldExpirer() {
+        if (holdExpirer != null) {
+            return;
+        }
+        holdExpirer = new Thread(() -> {
+            try {
+                while (!Thread.currentThread().isInterrupted()) {
+                    Thread.sleep(HOLD_TICK_MS);
+                    expireHolds();
+                }
+            } catch (InterruptedException e) {
+                // Stopped by close
+            }
+        }, "hold-expiry");
+        holdExpirer.setDaemon(true);
+        holdExpirer.start();
+    }
+
+    private synchronized void stopHoldExpirer() {
+        if (holdExpirer != null) {
+            holdExpirer.interrupt();
+            holdExpirer = null;
+        }
+    }
+
+    // Marks a changed flight's month for write-back and indexes a booking's month under the passport, if given;
+    // does nothing outside the partitioned format. The caller holds the flight's lock
+    private static void partitionChanged(Flight flight, String bookedPassportNum) {
+        if (partitions != null) {
+            partitions.markDirty(flight.getDate());
+            if (bookedPassportNum != null) {
+                partitions.indexBooking(bookedPassportNum, flight.getDate());
+            }
+        }
+    }
+
+    // Applies a batch of bookings and cancellations without printing and returns one result per operation, in input order.
+    // Operations are grouped by flight so that each flight is locked once, and the journal is synced once for the whole batch.
+    public List<BatchOperation.Result> applyBatch(List<BatchOperation> operations) {
+        long start = Metrics.ENABLED ? System.nanoTime() : 0;
+        BatchOperation.Result[] results = applyBatch(operations, null);
+        journal.sync();
+        if (Metrics.ENABLED) {
+            recordBatchLatency(operations, start);
+        }
+        checkpointIfNeeded();
+        return Arrays.asList(results);
+    }
+
+    // Applies a batch like applyBatch but returns once it is applied in memory. The future completes with the results
+    // when the batch's journal records are durable; they are synced by the journal writer together with other callers'
+    // records. Nobody can observe the changes as durable before that, but other threads may read them sooner.
+    public CompletableFuture<List<BatchOperation.Result>> applyBatchAsync(List<BatchOperation> operations) {
+        long start = Metrics.ENABLED ? System.nanoTime() : 0;
+        List<CompletableFuture<Long>> commits = new ArrayList<>();
+        BatchOperation.Result[] results = applyBatch(operations, commits);
+        checkpointInBackgroundIfNeeded();
+        return CompletableFuture.allOf(commits.toArray(new CompletableFuture<?>[0])).thenApply(v -> {
+            if (Metrics.ENABLED) {
+                recordBatchLatency(operations, start);
+            }
+            return Arrays.asList(results);
+        });
+    }
+
+    // Records the latency of each operation of a batch, from the start of the batch until it was durable, in the
+    // book and cancel histograms that Flight.bookFlight and cancelTicket also feed
+    private static void recordBatchLatency(List<BatchOperation> operations, long start) {
+        long elapsed = System.nanoTime() - start;
+        for (BatchOperation operation : operations) {
+            (operation.type == BatchOperation.Type.BOOK ? Metrics.BOOK : Metrics.CANCEL).record(elapsed);
+        }
+    }
+
+    // Applies a batch flight by flight; each flight's records are appended unsynced, or asynchronously when commits is given
+    private BatchOperation.Result[] applyBatch(List<BatchOperation> operations, List<CompletableFuture<Long>> commits) {
+        BatchOperation.Result[] results = new BatchOperation.Result[operations.size()];
+        LinkedHashMap<Flight, List<Integer>> byFlight = new LinkedHashMap<>();
+        if (partitions != null) {
+            partitions.loadForBatch(operations); // Months cannot be loaded under a flight lock, so they are loaded here
+        }
+        for (int i = 0; i < operations.size(); i++) {
+            Flight flight = processFlightID(operations.get(i).flightID);
+            if (flight == null) {
+                results[i] = BatchOperation.Result.NOT_FOUND;
+            } else {
+                byFlight.computeIfAbsent(flight, k -> new ArrayList<>()).add(i);
+            }
+        }
+
+        for (Map.Entry<Flight, List<Integer>> entry : byFlight.entrySet()) {
+            Flight flight = entry.getKey();
+            List<String[]> records = new ArrayList<>(entry.getValue().size());
+            flight.lock.lock();
+            while (flight.detached) {
+                // Its month was evicted by a load since the flight was resolved; the reloaded month has a new object
+                flight.unlock();
+                flight = processFlightID(flight.flightID);
+                if (flight == null) {
+                    break;
+                }
+                flight.lock.lock();
+            }
+            if (flight == null) {
+                for (int i : entry.getValue()) {
+                    results[i] = BatchOperation.Result.NOT_FOUND;
+                }
+                continue;
+            }
+            try {
+                for (int i : entry.getValue()) {
+                    results[i] = applyBatchOperation(flight, operations.get(i), records);
+                }
+                // Appended under the flight lock so the journal keeps this flight's order
+                if (commits == null) {
+                    journal.appendAll(records);
+                } else {
+                    commits.add(journal.appendAsync(records));
+                }
+            } finally {
+                flight.unlock();
+            }
+        }
+        return results;
+    }
+
+    // Applies one batch operation to a flight whose lock the caller holds, adding its journal record to records
+    private BatchOperation.Result applyBatchOperation(Flight flight, BatchOperation operation, List<String[]> records) {
+        if (operation.type == BatchOperation.Type.BOOK) {
+            Passenger passenger = registerLoadedPassenger(operation.passportNum, operation.name);
+            if (passenger.findTicket(flight) != null) {
+                return BatchOperation.Result.DUPLICATE;
+            }
+            Ticket ticket = flight.placePassenger(passenger, operation.cabin, operation.loyaltyTier);
+            if (ticket == null) {
+                return BatchOperation.Result.TICKET_LIMIT;
+            }
+            records.add(new String[] {"BOOK", flight.flightID, passenger.getName(), passenger.getPassportNum(),
+                    operation.cabin.name(), operation.loyaltyTier.name()});
+            partitionChanged(flight, passenger.getPassportNum());
+            boolean confirmed = ticket.getStatus() == Ticket.Status.CONFIRMED;
+            if (Metrics.ENABLED) {
+                (confirmed ? Metrics.BOOKINGS_CONFIRMED : Metrics.BOOKINGS_WAITLISTED).increment();
+            }
+            return confirmed ? BatchOperation.Result.CONFIRMED : BatchOperation.Result.WAITLISTED;
+        }
+
+        Passenger passenger = passengersByPassport.get(operation.passportNum); // Loaded with the flight if it is on it
+        if (passenger == null || !flight.removePassenger(passenger)) {
+            return BatchOperation.Result.NOT_FOUND;
+        }
+        records.add(new String[] {"CANCEL", flight.flightID, passenger.getPassportNum()});
+        partitionChanged(flight, null);
+        if (Metrics.ENABLED) {
+            Metrics.CANCELLATIONS.increment();
+        }
+        return BatchOperation.Result.CANCELED;
+    }
+
+    // Changes a passenger's details, re-keys the passenger index and records the change; fails if the new passport is
+    // taken. Returns once the change is durable; throws CompletionException if its journal record could not be
+    // written or synced, in which case the edit is in effect but will not survive a restart.
+    public boolean editPassenger(Passenger passenger, String newName, String newPassportNum) {
+        CompletableFuture<Long> durable;
+        if (partitions != null) {
+            // Every month holding either passport is loaded and none is evicted while the tickets are renamed
+            synchronized (partitions) {
+                partitions.loadPassenger(passenger.getPassportNum(), newPassportNum);
+                // A month evicted since the caller looked the passenger up was loaded again with a new object
+                Passenger loaded = passengersByPassport.get(passenger.getPassportNum());
+                durable = editLoadedPassenger(loaded != null ? loaded : passenger, newName, newPassportNum);
+            }
+        } else {
+            durable = editLoadedPassenger(passenger, newName, newPassportNum);
+        }
+        if (durable == null) {
+            return false;
+        }
+        durable.join();
+        checkpointIfNeeded();
+        return true;
+    }
+
+    // Applies an edit and appends its journal record; returns the record's future, or null if the new passport is taken
+    private CompletableFuture<Long> editLoadedPassenger(Passenger passenger, String newName, String newPassportNum) {
+        String oldPassportNum = passenger.getPassportNum();
+        boolean passportChanged = newPassportNum != null && !newPassportNum.isEmpty() && !newPassportNum.equals(oldPassportNum);
+        if (passportChanged && passengersByPassport.putIfAbsent(newPassportNum, passenger) != null) {
+            return null;
+        }
+
+        passenger.editPassengerDetails(newName, newPassportNum);
+        if (passportChanged) {
+            passengersByPassport.remove(oldPassportNum, passenger);
+        }
+        CompletableFuture<Long> durable = journal.appendAsync("EDIT", oldPassportNum, passenger.getName(),
+                passenger.getPassportNum());
+        passengerEdited(passenger, oldPassportNum);
+        return durable;
+    }
+
+    // Moves the index entry of an edited passenger and marks the months of their tickets for write-back;
+    // does nothing outside the partitioned format
+    private static void passengerEdited(Passenger passenger, String oldPassportNum) {
+        if (partitions != null) {
+            partitions.renamePassenger(oldPassportNum, passenger.getPassportNum());
+            for (Ticket ticket : passenger.getTickets()) {
+                partitions.markDirty(ticket.getFlight().getDate());
+            }
+        }
+    }
+
+    // Replays the journal records written after the snapshot
+    private void replayJournal() {
+        List<String[]> records = journal.readRecords(snapshotSeq);
+        for (String[] fields : records) {
+            try {
+                applyJournalRecord(fields);
+            } catch (RuntimeException e) {
+                System.err.println("Skipping journal record " + fields[0] + ": " + e.getMessage());
+            }
+        }
+    }
+
+    // Applies one journal record: seq, type and the type's fields
+    private void applyJournalRecord(String[] fields) {
+        if (partitions != null && !fields[1].equals("EDIT")) {
+            LocalDate date = FlightPartitions.dateOf(fields[2]);
+            if (date != null && partitions.contains(date, Long.parseLong(fields[0]))) {
+                if (fields[1].equals("BOOK")) {
+                    partitions.indexBooking(fields[4], date); // The index is only written by checkpoints
+                }
+                return; // The month was written back after this record
+            }
+        }
+        switch (fields[1]) {
+            case "BOOK": {
+                Flight flight = processFlightID(fields[2]);
+                if (flight == null) {
+                    System.err.println("Skipping journal record " + fields[0] + ": unknown flight " + fields[2]);
+                    break;
+                }
+                SeatMap.Cabin cabin = fields.length > 5 ? SeatMap.Cabin.valueOf(fields[5]) : SeatMap.Cabin.ECONOMY;
+                Ticket.LoyaltyTier loyaltyTier = fields.length > 6 ? Ticket.LoyaltyTier.valueOf(fields[6]) : Ticket.LoyaltyTier.NONE;
+                Passenger passenger = registerPassenger(fields[4], fields[3]);
+                SeatHold hold = fields.length > 7 ? holds.get(Long.parseLong(fields[7])) : null; // Set when a hold was confirmed
+                Ticket ticket = hold != null ? flight.placeHeldPassenger(hold, passenger) : flight.placePassenger(passenger, cabin, loyaltyTier);
+                if (ticket != null) {
+                    if (hold != null) {
+                        holdEnded(hold);
                     }
+                    partitionChanged(flight, fields[4]);
                 }
+                break;
             }
+            case "HOLD": {
+                Flight flight = processFlightID(fields[2]);
+                long id = Long.parseLong(fields[3]);
+                if (flight == null) {
+                    System.err.println("Skipping journal record " + fields[0] + ": unknown flight " + fields[2]);
+                    break;
+                }
+                if (holds.containsKey(id)) {
+                    break; // Carried into the new journal by a checkpoint that did not complete
+                }
+                SeatHold hold = new SeatHold(id, flight, SeatMap.Cabin.valueOf(fields[4]), Long.parseLong(fields[6]));
+                flight.addHold(hold, Integer.parseInt(fields[5]));
+                holds.put(id, hold);
+                holdTimers.add(hold, hold.deadline);
+                holdIds.accumulateAndGet(id, Math::max);
+                break;
+            }
+            case "RELEASE": {
+                SeatHold hold = holds.get(Long.parseLong(fields[3]));
+                if (hold != null && hold.flight.removeHold(hold, SeatHold.Status.RELEASED)) {
+                    holdEnded(hold);
+                    partitionChanged(hold.flight, null);
+                }
+                break;
+            }
+            case "CANCEL": {
+                Flight flight = processFlightID(fields[2]);
+                if (flight == null) {
+                    System.err.println("Skipping journal record " + fields[0] + ": unknown flight " + fields[2]);
+                    break;
+                }
+                Passenger passenger = getPassengerInfo(fields[3]);
+                if (passenger != null && flight.removePassenger(passenger)) {
+                    partitionChanged(flight, null);
+                }
+                break;
+            }
+            case "EDIT": {
+                if (partitions != null) {
+                    replayPartitionedEdit(Long.parseLong(fields[0]), fields[2], fields[3], fields[4]);
+                    break;
+                }
+                Passenger passenger = getPassengerInfo(fields[2]);
+                if (passenger != null) {
+                    passenger.setName(fields[3]);
+                    passenger.setPassportNum(fields[4]);
+                    passengersByPassport.remove(fields[2], passenger);
+                    passengersByPassport.put(fields[4], passenger);
+                }
+                break;
+            }
+            default:
+                System.err.println("Unknown journal record type: " + fields[1]);
         }
-        return null;
     }
 
-    // Converts a queue of passengers to a string representation (not used in the current code)
-    private String getPassengerListString(Queue<Passenger> passengers) {
-        StringBuilder sb = new StringBuilder();
-        ArrayList<Passenger> passengerList = new ArrayList<>(passengers); 
-        for (int i = 0; i < passengerList.size(); i++) {
-            Passenger passenger = passengerList.get(i);
-            sb.append(passenger.getName()).append("(").append(passenger.getPassportNum()).append(")");
-            if (i < passengerList.size() - 1) {
-                sb.append(",");
+    // Replays an edit in the partitioned format. Months written back after the edit already contain it, and a passenger
+    // found there under the old passport booked after the edit, so only the tickets in older months change hands
+    private void replayPartitionedEdit(long seq, String oldPassportNum, String newName, String newPassportNum) {
+        Passenger passenger = getPassengerInfo(oldPassportNum);
+        partitions.renamePassenger(oldPassportNum, newPassportNum);
+        if (passenger == null) {
+            return;
+        }
+        List<Ticket> edited = new ArrayList<>();
+        for (Ticket ticket : passenger.getTickets()) {
+            if (!partitions.contains(ticket.getFlight().getDate(), seq)) {
+                edited.add(ticket);
+                partitions.markDirty(ticket.getFlight().getDate());
+            }
+        }
+        if (edited.isEmpty()) {
+            return;
+        }
+        Passenger renamed = registerLoadedPassenger(newPassportNum, newName);
+        renamed.setName(newName);
+        if (renamed != passenger) {
+            renamed.takeTickets(passenger, edited);
+            if (passenger.getTickets().isEmpty()) {
+                passengersByPassport.remove(oldPassportNum, passenger);
             }
         }
-        return sb.toString();
+    }
+
+    // Finds a ticket for a given flight and passenger (not used in the current code)
+    private Ticket findTicket(Flight flight, Passenger passenger, Ticket.Status status) {   
+        Ticket ticket = new Ticket(passenger, flight);
+        ticket.setStatus(status);   
+        return ticket;   
     }
     
-    // Processes a flight ID string to retrieve the corresponding Flight object
-    public static Flight processFlightID(String flightID) {
-        String[] parts = flightID.split("-");
-        int flightIndex = Integer.parseInt(parts[1]);
-        String dateString = parts[2] + "-" + parts[3] + "-" + parts[4];
-        LocalDate date = LocalDate.parse(dateString, formatter);
+    // Retrieves passenger information based on passport number
+    public Passenger getPassengerInfo(String passportNum) {
+        if (partitions != null) {
+            partitions.loadPassenger(passportNum);
+        }
+        if (Metrics.ENABLED) {
+            long start = System.nanoTime();
+            Passenger passenger = passengersByPassport.get(passportNum);
+            Metrics.PASSENGER_LOOKUP.record(System.nanoTime() - start);
+            return passenger;
+        }
+        return passengersByPassport.get(passportNum);
+    }
 
-        return flightsByDate.get(date).get(flightIndex);
+    // Processes a flight ID string to retrieve the corresponding Flight object; returns null if there is no such flight
+    public static Flight processFlightID(String flightID) {
+        if (flightID == null) {
+            return null;
+        }
+        Flight flight = flightsById.get(flightID);
+        if (partitions != null) {
+            if (flight == null) {
+                return partitions.loadFlight(flightID); // Null if its month does not exist either
+            }
+            partitions.touch(flight.getDate());
+        }
+        return flight;
     }
 }
\ No newline at end of file
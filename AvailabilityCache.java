@@ -0,0 +1,231 @@
+import java.time.LocalDate;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+// Bounded LRU cache of rendered searches, keyed by date range, whether only flights with vacancy are shown and
+// whether the output is the console's (searchFlights) or a BookingServer SEARCH response.
+//
+// Entries live in parallel arrays with a doubly linked LRU list, and an open-addressing table maps the key to its
+// entry, so a hit allocates nothing. Flights call invalidate for their date whenever their seat counts change,
+// which only bumps that day's version stripe: it takes no lock and does not look at the entries, so a booking pays
+// one atomic increment for it. Each entry keeps the sum of its days' versions as of the render, and a lookup that
+// finds the sum changed drops the entry and renders again. The version is read before rendering, so a render that
+// raced a booking is stored with a version that is already stale and is never served.
+public class AvailabilityCache {
+    static final int DEFAULT_CAPACITY = 256; // Ranges kept before the least recently used one is evicted
+    private static final int VERSION_STRIPES = 1024; // Days share a version counter modulo this
+    private static final int VACANT_ONLY = 1; // Kind bit: only flights with empty seats
+    private static final int RESPONSE = 2; // Kind bit: rendered as a BookingServer SEARCH response
+
+    private final int capacity;
+    private final long[] keys; // Range of each entry: from epoch day in the high half, to epoch day in the low half
+    private final byte[] kinds; // VACANT_ONLY and RESPONSE bits of each entry
+    private final long[] versions; // Range version each entry was rendered at
+    private final String[] values; // Rendered flights of each entry
+    private final int[] prev; // Next more recently used entry, or -1
+    private final int[] next; // Next less recently used entry, or -1; links free entries too
+    private final int[] table; // Entry index + 1 per hash slot, 0 when the slot is empty
+    private final int mask; // table.length - 1
+    private final AtomicLongArray dayVersions = new AtomicLongArray(VERSION_STRIPES); // Invalidations per day stripe
+    private int head = -1; // Most recently used entry
+    private int tail = -1; // Least recently used entry
+    private int free; // First unused entry, or -1
+    private int size; // Number of cached ranges
+
+    private long hits; // Lookups answered from the cache
+    private long misses; // Lookups that had to render
+    private long evictions; // Entries dropped to make room
+    private long invalidations; // Entries found stale because a flight on their dates changed
+
+    public AvailabilityCache(int capacity) {
+        this.capacity = capacity;
+        keys = new long[capacity];
+        kinds = new byte[capacity];
+        versions = new long[capacity];
+        values = new String[capacity];
+        prev = new int[capacity];
+        next = new int[capacity];
+        for (int i = 0; i < capacity; i++) {
+            next[i] = i + 1 < capacity ? i + 1 : -1;
+        }
+        free = capacity > 0 ? 0 : -1;
+        table = new int[Integer.highestOneBit(Math.max(1, capacity) * 2) * 2];
+        mask = table.length - 1;
+    }
+
+    // Returns the searchFlights output for two dates, rendering and caching it on a miss
+    public String get(LocalDate date1, LocalDate date2, boolean vacantOnly) {
+        return get(date1, date2, vacantOnly ? VACANT_ONLY : 0);
+    }
+
+    // Returns the BookingServer SEARCH response for two dates, rendering and caching it on a miss
+    public String getResponse(LocalDate date1, LocalDate date2, boolean vacantOnly) {
+        return get(date1, date2, RESPONSE | (vacantOnly ? VACANT_ONLY : 0));
+    }
+
+    private String get(LocalDate date1, LocalDate date2, int kind) {
+        long fromDay = date1.toEpochDay();
+        long toDay = date2.toEpochDay();
+        long key = (fromDay << 32) | (toDay & 0xFFFFFFFFL);
+        long version = rangeVersion(fromDay, toDay);
+        synchronized (this) {
+            int entry = lookup(key, kind);
+            if (entry >= 0 && versions[entry] == version) {
+                hits++;
+                moveToFront(entry);
+                return values[entry];
+            }
+            if (entry >= 0) {
+                remove(entry);
+                invalidations++;
+            }
+            misses++;
+        }
+
+        boolean vacantOnly = (kind & VACANT_ONLY) != 0;
+        String rendered = (kind & RESPONSE) != 0
+                ? BookingServer.renderSearch(date1, date2, vacantOnly)
+                : AnnualFlightScheduler.renderFlights(date1, date2, vacantOnly ? FlightView::hasVacancy : flight -> true);
+        synchronized (this) {
+            if (capacity > 0 && lookup(key, kind) < 0) {
+                insert(key, kind, version, rendered);
+            }
+        }
+        return rendered;
+    }
+
+    // Marks every cached range that contains the date stale; called after a flight on that date changed
+    public void invalidate(LocalDate date) {
+        dayVersions.incrementAndGet((int) Math.floorMod(date.toEpochDay(), (long) VERSION_STRIPES));
+    }
+
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    public synchronized long getEvictions() {
+        return evictions;
+    }
+
+    public synchronized long getInvalidations() {
+        return invalidations;
+    }
+
+    public synchronized int size() {
+        return size;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "Availability cache: " + size + "/" + capacity + " ranges, " + hits + " hits, " + misses + " misses, "
+                + evictions + " evictions, " + invalidations + " invalidations";
+    }
+
+    // Sums the versions of the days in the range; it changes whenever one of those days is invalidated
+    private long rangeVersion(long fromDay, long toDay) {
+        if (toDay - fromDay + 1 >= VERSION_STRIPES) {
+            fromDay = 0;
+            toDay = VERSION_STRIPES - 1; // Every stripe is covered
+        }
+        long version = 0;
+        for (long day = fromDay; day <= toDay; day++) {
+            version += dayVersions.get((int) Math.floorMod(day, (long) VERSION_STRIPES));
+        }
+        return version;
+    }
+
+    private int lookup(long key, int kind) {
+        for (int slot = hash(key, kind); table[slot] != 0; slot = (slot + 1) & mask) {
+            int entry = table[slot] - 1;
+            if (keys[entry] == key && kinds[entry] == kind) {
+                return entry;
+            }
+        }
+        return -1;
+    }
+
+    private void insert(long key, int kind, long version, String value) {
+        if (size == capacity) {
+            remove(tail);
+            evictions++;
+        }
+        int entry = free;
+        free = next[entry];
+        keys[entry] = key;
+        kinds[entry] = (byte) kind;
+        versions[entry] = version;
+        values[entry] = value;
+
+        prev[entry] = -1;
+        next[entry] = head;
+        if (head >= 0) {
+            prev[head] = entry;
+        }
+        head = entry;
+        if (tail < 0) {
+            tail = entry;
+        }
+
+        int slot = hash(key, kind);
+        while (table[slot] != 0) {
+            slot = (slot + 1) & mask;
+        }
+        table[slot] = entry + 1;
+        size++;
+    }
+
+    // Unlinks an entry, frees it and deletes it from the table by shifting later colliding slots back
+    private void remove(int entry) {
+        unlink(entry);
+        values[entry] = null;
+        next[entry] = free;
+        free = entry;
+        size--;
+
+        int slot = hash(keys[entry], kinds[entry]);
+        while (table[slot] != entry + 1) {
+            slot = (slot + 1) & mask;
+        }
+        for (int probe = (slot + 1) & mask; table[probe] != 0; probe = (probe + 1) & mask) {
+            int home = hash(keys[table[probe] - 1], kinds[table[probe] - 1]);
+            // The entry at probe may fill the hole unless its home slot lies cyclically in (slot, probe]
+            boolean staysPut = slot <= probe ? slot < home && home <= probe : slot < home || home <= probe;
+            if (!staysPut) {
+                table[slot] = table[probe];
+                slot = probe;
+            }
+        }
+        table[slot] = 0;
+    }
+
+    private void moveToFront(int entry) {
+        if (entry == head) {
+            return;
+        }
+        unlink(entry);
+        prev[entry] = -1;
+        next[entry] = head;
+        prev[head] = entry;
+        head = entry;
+    }
+
+    private void unlink(int entry) {
+        if (prev[entry] >= 0) {
+            next[prev[entry]] = next[entry];
+        } else {
+            head = next[entry];
+        }
+        if (next[entry] >= 0) {
+            prev[next[entry]] = prev[entry];
+        } else {
+            tail = prev[entry];
+        }
+    }
+
+    private int hash(long key, int kind) {
+        return (int) (((key + kind) * 0x9E3779B97F4A7C15L) >>> 32) & mask;
+    }
+}
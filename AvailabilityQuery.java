@@ -0,0 +1,212 @@
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.time.temporal.TemporalAdjusters;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+// Availability questions answered over the whole schedule. Each query cuts its date range into partitions of
+// PARTITION_DAYS days, scans the partitions' inventory slots in parallel on the caller's fork-join pool
+// (the common pool unless the caller runs inside another) and merges the partial results in date order.
+public class AvailabilityQuery {
+    static final int PARTITION_DAYS = 7; // Days per partition; a year gives the pool about 50 tasks
+
+    // Load of the flights departing in one week
+    public static class WeeklyLoad {
+        public final LocalDate weekStart; // Monday of the week
+        public final int flights; // Number of flights
+        public final long seats; // Total capacity
+        public final long confirmedSeats; // Total confirmed seats
+
+        WeeklyLoad(LocalDate weekStart, int flights, long seats, long confirmedSeats) {
+            this.weekStart = weekStart;
+            this.flights = flights;
+            this.seats = seats;
+            this.confirmedSeats = confirmedSeats;
+        }
+
+        // Fraction of the week's seats that are confirmed, or 0 for a week without flights
+        public double getLoadFactor() {
+            return seats == 0 ? 0 : (double) confirmedSeats / seats;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("Week of %s: %d flights, %d/%d seats confirmed, load factor %.3f",
+                    weekStart, flights, confirmedSeats, seats, getLoadFactor());
+        }
+    }
+
+    // A flight with more demand than seats
+    public static class Oversubscription {
+        public final Flight flight;
+        public final int capacity; // Seats on the flight
+        public final int confirmedSeats; // Confirmed seats
+        public final int waitlistCount; // Passengers on the waiting list
+
+        Oversubscription(Flight flight, int capacity, int confirmedSeats, int waitlistCount) {
+            this.flight = flight;
+            this.capacity = capacity;
+            this.confirmedSeats = confirmedSeats;
+            this.waitlistCount = waitlistCount;
+        }
+
+        // Confirmed and waitlisted passengers per seat
+        public double getDemandRatio() {
+            return (double) (confirmedSeats + waitlistCount) / capacity;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%s: %d confirmed, %d waitlisted, %d seats, demand ratio %.2f",
+                    flight.flightID, confirmedSeats, waitlistCount, capacity, getDemandRatio());
+        }
+    }
+
+    // Returns the first flight departing on or after a date with at least the given number of free seats, or null
+    public static Flight firstWithFreeSeats(LocalDate from, int seats) {
+        LocalDate lastScheduled = AnnualFlightScheduler.lastScheduledDate();
+        LocalDate last = lastScheduled == null ? from : lastScheduled;
+        FlightPartitions.Pin pin = AnnualFlightScheduler.pinRange(from, last);
+        try {
+            FlightInventory inventory = AnnualFlightScheduler.inventory;
+            // findFirst keeps encounter order, so the earliest partition with a match wins even when a later one finishes first
+            return partitions(from, last)
+                    .map(p -> inventory.find(FlightInventory.EMPTY, seats, partitionStart(inventory, from, p),
+                            partitionEnd(inventory, from, last, p)))
+                    .filter(slot -> slot >= 0)
+                    .mapToObj(inventory::flightAt)
+                    .findFirst()
+                    .orElse(null);
+        } finally {
+            pin.close();
+        }
+    }
+
+    // Returns the load of every week that overlaps the range, including weeks without flights
+    public static List<WeeklyLoad> weeklyLoad(LocalDate from, LocalDate to) {
+        if (from.isAfter(to)) {
+            return new ArrayList<>();
+        }
+        FlightPartitions.Pin pin = AnnualFlightScheduler.pinRange(from, to);
+        try {
+            FlightInventory inventory = AnnualFlightScheduler.inventory;
+            LocalDate firstMonday = from.with(TemporalAdjusters.previousOrSame(DayOfWeek.MONDAY));
+            int weeks = (int) ((to.toEpochDay() - firstMonday.toEpochDay()) / 7 + 1);
+            return IntStream.range(0, weeks).parallel()
+                    .mapToObj(w -> {
+                        LocalDate weekStart = firstMonday.plusWeeks(w);
+                        LocalDate start = weekStart.isBefore(from) ? from : weekStart;
+                        LocalDate end = weekStart.plusDays(6).isAfter(to) ? to : weekStart.plusDays(6);
+                        int first = inventory.firstSlot(start);
+                        int last = inventory.endSlot(end);
+                        return new WeeklyLoad(weekStart, Math.max(0, last - first),
+                                inventory.sum(FlightInventory.CAPACITY, first, last),
+                                inventory.sum(FlightInventory.CONFIRMED, first, last));
+                    })
+                    .collect(Collectors.toList());
+        } finally {
+            pin.close();
+        }
+    }
+
+    // Returns the flights in the range whose waiting list is longer than k, in date order
+    public static List<Flight> waitlistedOver(LocalDate from, LocalDate to, int k) {
+        FlightPartitions.Pin pin = AnnualFlightScheduler.pinRange(from, to);
+        try {
+            FlightInventory inventory = AnnualFlightScheduler.inventory;
+            return partitions(from, to)
+                    .mapToObj(p -> {
+                        List<Flight> flights = new ArrayList<>();
+                        int end = partitionEnd(inventory, from, to, p);
+                        int slot = inventory.find(FlightInventory.WAITLIST, k + 1, partitionStart(inventory, from, p), end);
+                        while (slot >= 0) {
+                            flights.add(inventory.flightAt(slot));
+                            slot = inventory.find(FlightInventory.WAITLIST, k + 1, slot + 1, end);
+                        }
+                        return flights;
+                    })
+                    .flatMap(List::stream)
+                    .collect(Collectors.toList());
+        } finally {
+            pin.close();
+        }
+    }
+
+    // Returns the n flights in the range with the highest demand ratio, highest first; only waitlisted flights qualify
+    public static List<Oversubscription> mostOversubscribed(LocalDate from, LocalDate to, int n) {
+        Comparator<Oversubscription> byDemand = Comparator.comparingDouble(Oversubscription::getDemandRatio)
+                .thenComparingInt(o -> o.waitlistCount)
+                .thenComparing(o -> o.flight.getDate(), Comparator.reverseOrder()); // Earlier flights rank higher on ties
+        if (n <= 0) {
+            return new ArrayList<>();
+        }
+        PriorityQueue<Oversubscription> top;
+        FlightPartitions.Pin pin = AnnualFlightScheduler.pinRange(from, to);
+        try {
+            FlightInventory inventory = AnnualFlightScheduler.inventory;
+            top = partitions(from, to)
+                    .mapToObj(p -> {
+                        // Each partition keeps its own n best in a min-heap, so merging only looks at n per partition
+                        PriorityQueue<Oversubscription> best = new PriorityQueue<>(byDemand);
+                        int end = partitionEnd(inventory, from, to, p);
+                        int slot = inventory.find(FlightInventory.WAITLIST, 1, partitionStart(inventory, from, p), end);
+                        while (slot >= 0) {
+                            offer(best, new Oversubscription(inventory.flightAt(slot),
+                                    inventory.get(slot, FlightInventory.CAPACITY), inventory.get(slot, FlightInventory.CONFIRMED),
+                                    inventory.get(slot, FlightInventory.WAITLIST)), n, byDemand);
+                            slot = inventory.find(FlightInventory.WAITLIST, 1, slot + 1, end);
+                        }
+                        return best;
+                    })
+                    .reduce(new PriorityQueue<>(byDemand), (a, b) -> {
+                        PriorityQueue<Oversubscription> merged = new PriorityQueue<>(byDemand);
+                        for (Oversubscription o : a) {
+                            offer(merged, o, n, byDemand);
+                        }
+                        for (Oversubscription o : b) {
+                            offer(merged, o, n, byDemand);
+                        }
+                        return merged;
+                    });
+        } finally {
+            pin.close();
+        }
+
+        List<Oversubscription> result = new ArrayList<>(top);
+        result.sort(byDemand.reversed());
+        return result;
+    }
+
+    // Adds to a min-heap of at most n elements, dropping the smallest when it overflows
+    private static void offer(PriorityQueue<Oversubscription> heap, Oversubscription o, int n,
+                              Comparator<Oversubscription> byDemand) {
+        if (heap.size() < n) {
+            heap.add(o);
+        } else if (byDemand.compare(o, heap.peek()) > 0) {
+            heap.poll();
+            heap.add(o);
+        }
+    }
+
+    // Returns a parallel stream of the partition numbers covering [from, to]
+    private static IntStream partitions(LocalDate from, LocalDate to) {
+        if (from.isAfter(to)) {
+            return IntStream.empty();
+        }
+        long days = to.toEpochDay() - from.toEpochDay() + 1;
+        return IntStream.range(0, (int) ((days + PARTITION_DAYS - 1) / PARTITION_DAYS)).parallel();
+    }
+
+    private static int partitionStart(FlightInventory inventory, LocalDate from, int partition) {
+        return inventory.firstSlot(from.plusDays((long) partition * PARTITION_DAYS));
+    }
+
+    private static int partitionEnd(FlightInventory inventory, LocalDate from, LocalDate to, int partition) {
+        LocalDate end = from.plusDays((long) partition * PARTITION_DAYS + PARTITION_DAYS - 1);
+        return inventory.endSlot(end.isAfter(to) ? to : end);
+    }
+}
@@ -0,0 +1,55 @@
+// One booking or cancellation in a batch handed to AnnualFlightScheduler.applyBatch
+public class BatchOperation {
+    // Kinds of operation a batch may contain
+    public enum Type {
+        BOOK, CANCEL
+    }
+
+    // Outcome of one operation
+    public enum Result {
+        CONFIRMED, // Booked with a seat
+        WAITLISTED, // Booked onto the waiting list
+        CANCELED, // Confirmed or waitlisted ticket canceled
+        DUPLICATE, // Passenger is already confirmed or waitlisted on the flight
+        TICKET_LIMIT, // Passenger already holds the maximum number of tickets
+        NOT_FOUND // Unknown flight, unknown passenger, or nothing to cancel
+    }
+
+    final Type type; // Booking or cancellation
+    final String flightID; // Flight the operation applies to
+    final String passportNum; // Passport number of the passenger
+    final String name; // Passenger's name; only used when booking
+    final SeatMap.Cabin cabin; // Preferred cabin; only used when booking
+    final Ticket.LoyaltyTier loyaltyTier; // Passenger's loyalty tier; only used when booking
+
+    private BatchOperation(Type type, String flightID, String passportNum, String name, SeatMap.Cabin cabin,
+                           Ticket.LoyaltyTier loyaltyTier) {
+        this.type = type;
+        this.flightID = flightID;
+        this.passportNum = passportNum;
+        this.name = name;
+        this.cabin = cabin;
+        this.loyaltyTier = loyaltyTier;
+    }
+
+    // Books a passenger, registering them if the passport is new
+    public static BatchOperation book(String flightID, String passportNum, String name, SeatMap.Cabin cabin) {
+        return book(flightID, passportNum, name, cabin, Ticket.LoyaltyTier.NONE);
+    }
+
+    // Books a passenger who holds a loyalty tier
+    public static BatchOperation book(String flightID, String passportNum, String name, SeatMap.Cabin cabin,
+                                      Ticket.LoyaltyTier loyaltyTier) {
+        return new BatchOperation(Type.BOOK, flightID, passportNum, name, cabin, loyaltyTier);
+    }
+
+    // Cancels a passenger's confirmed or waitlisted ticket
+    public static BatchOperation cancel(String flightID, String passportNum) {
+        return new BatchOperation(Type.CANCEL, flightID, passportNum, null, null, null);
+    }
+
+    @Override
+    public String toString() {
+        return type + " " + flightID + " " + passportNum;
+    }
+}
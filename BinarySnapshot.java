@@ -0,0 +1,325 @@
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.DateTimeException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+// Versioned binary snapshot of the flight inventory.
+//
+// Layout (big-endian; "var" is an unsigned LEB128 varint, "string" is a var byte length followed by UTF-8 bytes):
+//   int magic 'FLTS', short version, long journal sequence number
+//   var passenger count, then per passenger: string passport, string name
+//   var day count, then per day: int epoch day, var flight count, then per flight:
+//     var flight number + 1 (0 means a string flight ID follows),
+//     var capacity, var business seats, var confirmed seats, var empty seats, var held seats,
+//     var confirmed count, then per passenger: var passenger index, var seat + 1 (0 if none)
+//     var waitlist count, then per passenger: var passenger index, byte cabin | loyalty tier << 1
+// Version 1 files have no tier bits and load with every tier NONE; files before version 3 have no held seats.
+public class BinarySnapshot {
+    static final int MAGIC = 0x464C5453; // "FLTS"
+    static final short VERSION = 3; // Bumped whenever the layout changes
+    static final int MIN_FLIGHT_BYTES = 6; // Fewest bytes a flight is written in, which bounds the flights a file holds
+    private static final SeatMap.Cabin[] CABINS = SeatMap.Cabin.values();
+    private static final Ticket.LoyaltyTier[] TIERS = Ticket.LoyaltyTier.values();
+
+    private final AnnualFlightScheduler afs; // Scheduler that builds flights and owns the passenger index
+    private long snapshotSeq; // Journal sequence number stored in the file
+
+    public BinarySnapshot(AnnualFlightScheduler afs) {
+        this.afs = afs;
+    }
+
+    // Writes the flights to a temporary file, syncs it and renames it over fileName
+    public static void write(String fileName, List<FlightSnapshot> flights, long seq) throws IOException {
+        // Number the distinct passports so that every manifest refers to passengers by index
+        HashMap<String, Integer> passengerIndex = new HashMap<>();
+        List<String> passports = new ArrayList<>();
+        List<String> names = new ArrayList<>();
+        for (FlightSnapshot flight : flights) {
+            indexPassengers(flight.confirmedPassports, flight.confirmedNames, passengerIndex, passports, names);
+            indexPassengers(flight.waitlistedPassports, flight.waitlistedNames, passengerIndex, passports, names);
+        }
+
+        String tempFileName = fileName + ".tmp";
+        try (FileOutputStream file = new FileOutputStream(tempFileName);
+             DataOutputStream out = new DataOutputStream(new BufferedOutputStream(file, 1 << 16))) {
+            out.writeInt(MAGIC);
+            out.writeShort(VERSION);
+            out.writeLong(seq);
+
+            writeVar(out, passports.size());
+            for (int i = 0; i < passports.size(); i++) {
+                writeString(out, passports.get(i));
+                writeString(out, names.get(i));
+            }
+
+            // Flights arrive in date order, so each day is written once followed by its flights
+            List<Integer> dayStarts = new ArrayList<>();
+            for (int i = 0; i < flights.size(); i++) {
+                if (i == 0 || !flights.get(i).date.equals(flights.get(i - 1).date)) {
+                    dayStarts.add(i);
+                }
+            }
+            dayStarts.add(flights.size());
+
+            writeVar(out, dayStarts.size() - 1);
+            for (int d = 0; d + 1 < dayStarts.size(); d++) {
+                int from = dayStarts.get(d);
+                int to = dayStarts.get(d + 1);
+                out.writeInt((int) flights.get(from).date.toEpochDay());
+                writeVar(out, to - from);
+                for (int f = from; f < to; f++) {
+                    FlightSnapshot flight = flights.get(f);
+                    int flightNumber = parseFlightNumber(flight.flightID, flight.date);
+                    writeVar(out, flightNumber + 1);
+                    if (flightNumber < 0) {
+                        writeString(out, flight.flightID);
+                    }
+                    writeVar(out, flight.capacity);
+                    writeVar(out, flight.businessSeats);
+                    writeVar(out, flight.confirmedSeats);
+                    writeVar(out, flight.emptySeats);
+                    writeVar(out, flight.heldSeats);
+
+                    writeVar(out, flight.confirmedPassports.length);
+                    for (int i = 0; i < flight.confirmedPassports.length; i++) {
+                        writeVar(out, passengerIndex.get(flight.confirmedPassports[i]));
+                        writeVar(out, flight.confirmedSeatNumbers[i] + 1);
+                    }
+                    writeVar(out, flight.waitlistedPassports.length);
+                    for (int i = 0; i < flight.waitlistedPassports.length; i++) {
+                        writeVar(out, passengerIndex.get(flight.waitlistedPassports[i]));
+                        out.writeByte(flight.waitlistedCabins[i].ordinal() | flight.waitlistedTiers[i].ordinal() << 1);
+                    }
+                }
+            }
+            out.flush();
+            file.getFD().sync();
+        }
+
+        Files.move(Paths.get(tempFileName), Paths.get(fileName),
+                StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    // Reads the whole file and rebuilds its flights in file order. A truncated or corrupt file fails with an
+    // IOException naming it, like one that cannot be read.
+    public List<Flight> load(String fileName) throws IOException {
+        try {
+            return read(fileName);
+        } catch (BufferUnderflowException e) {
+            throw new IOException("Truncated snapshot: " + fileName, e);
+        } catch (IllegalArgumentException | IndexOutOfBoundsException | DateTimeException e) {
+            throw new IOException("Corrupt snapshot " + fileName + ": " + e.getMessage(), e);
+        }
+    }
+
+    private List<Flight> read(String fileName) throws IOException {
+        Path path = Paths.get(fileName);
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE - 8) {
+                throw new IOException("Snapshot too large to load: " + fileName);
+            }
+            // Read into the heap rather than mapped: a mapping lasts until it is garbage collected, and on Windows it
+            // makes writing a month back over its file fail
+            ByteBuffer in = ByteBuffer.allocate((int) channel.size());
+            while (in.hasRemaining()) {
+                if (channel.read(in) < 0) {
+                    break; // Shrank while being read; parsing reports it as truncated
+                }
+            }
+            in.flip();
+
+            if (in.getInt() != MAGIC) {
+                throw new IOException("Not a flight snapshot: " + fileName);
+            }
+            short version = in.getShort();
+            if (version < 1 || version > VERSION) {
+                throw new IOException("Unsupported snapshot version " + version + " in " + fileName);
+            }
+            snapshotSeq = in.getLong();
+
+            Passenger[] passengers = new Passenger[readCount(in, 2)];
+            for (int i = 0; i < passengers.length; i++) {
+                String passportNum = readString(in);
+                String name = readString(in);
+                passengers[i] = afs.registerLoadedPassenger(passportNum, name);
+            }
+
+            int dayCount = readCount(in, 5);
+            List<Flight> flights = new ArrayList<>();
+            for (int d = 0; d < dayCount; d++) {
+                LocalDate date = LocalDate.ofEpochDay(in.getInt());
+                int flightCount = readCount(in, MIN_FLIGHT_BYTES);
+                for (int f = 0; f < flightCount; f++) {
+                    int flightNumber = readVar(in) - 1;
+                    String flightID = flightNumber >= 0 ? "Flight-" + flightNumber + "-" + date : readString(in);
+
+                    int capacity = readVar(in);
+                    int businessSeats = readVar(in);
+                    int confirmedSeats = readVar(in);
+                    int emptySeats = readVar(in);
+                    int heldSeats = version >= 3 ? readVar(in) : 0;
+                    Flight flight = afs.createFlight(flightID, date, confirmedSeats, emptySeats, capacity, businessSeats);
+
+                    int confirmedCount = readCount(in, 2);
+                    for (int i = 0; i < confirmedCount; i++) {
+                        Passenger passenger = passengers[readVar(in)];
+                        int seat = readVar(in) - 1;
+                        if (flight != null) {
+                            afs.addLoadedPassenger(flight, passenger, Ticket.Status.CONFIRMED, seat, SeatMap.Cabin.ECONOMY,
+                                    Ticket.LoyaltyTier.NONE);
+                        }
+                    }
+                    int waitlistCount = readCount(in, 2);
+                    for (int i = 0; i < waitlistCount; i++) {
+                        Passenger passenger = passengers[readVar(in)];
+                        int cabinAndTier = in.get();
+                        if (flight != null) {
+                            afs.addLoadedPassenger(flight, passenger, Ticket.Status.WAITING_LIST, -1,
+                                    CABINS[cabinAndTier & 1], TIERS[cabinAndTier >> 1]);
+                        }
+                    }
+
+                    if (flight != null) {
+                        afs.finishLoadedFlight(flight, heldSeats);
+                        flights.add(flight);
+                    }
+                }
+            }
+            return flights;
+        }
+    }
+
+    public long getSnapshotSeq() {
+        return snapshotSeq;
+    }
+
+    // Reads only the journal sequence number from a snapshot's header
+    static long readSnapshotSeq(String fileName) throws IOException {
+        try (DataInputStream in = new DataInputStream(new FileInputStream(fileName))) {
+            if (in.readInt() != MAGIC) {
+                throw new IOException("Not a flight snapshot: " + fileName);
+            }
+            in.readShort();
+            return in.readLong();
+        }
+    }
+
+    // Converts a snapshot between formats: java BinarySnapshot <import|export> <flights.csv> <flights.bin>
+    public static void main(String[] args) throws IOException {
+        if (args.length != 3 || !(args[0].equals("import") || args[0].equals("export"))) {
+            System.err.println("Usage: java BinarySnapshot <import|export> <csv file> <binary file>");
+            return;
+        }
+        boolean importing = args[0].equals("import");
+        String source = importing ? args[1] : args[2];
+        String target = importing ? args[2] : args[1];
+        AnnualFlightScheduler.SnapshotFormat sourceFormat = importing
+                ? AnnualFlightScheduler.SnapshotFormat.CSV : AnnualFlightScheduler.SnapshotFormat.BINARY;
+        AnnualFlightScheduler.SnapshotFormat targetFormat = importing
+                ? AnnualFlightScheduler.SnapshotFormat.BINARY : AnnualFlightScheduler.SnapshotFormat.CSV;
+
+        Path journal = Files.createTempFile("flights", ".journal"); // The conversion has no journal of its own
+        try {
+            AnnualFlightScheduler afs = new AnnualFlightScheduler(source, journal.toString(), sourceFormat);
+            afs.exportSnapshot(target, targetFormat);
+            System.out.println("Converted " + source + " to " + target);
+        } finally {
+            Files.deleteIfExists(journal);
+        }
+    }
+
+    private static void indexPassengers(String[] passportNums, String[] passengerNames, HashMap<String, Integer> passengerIndex,
+                                        List<String> passports, List<String> names) {
+        for (int i = 0; i < passportNums.length; i++) {
+            if (passengerIndex.putIfAbsent(passportNums[i], passports.size()) == null) {
+                passports.add(passportNums[i]);
+                names.add(passengerNames[i]);
+            }
+        }
+    }
+
+    // Returns n for an ID of the form Flight-n-yyyy-MM-dd on this date, or -1 for any other ID
+    private static int parseFlightNumber(String flightID, LocalDate date) {
+        if (!flightID.startsWith("Flight-")) {
+            return -1;
+        }
+        int dash = flightID.indexOf('-', 7);
+        if (dash < 0 || !flightID.substring(dash + 1).equals(date.toString())) {
+            return -1;
+        }
+        try {
+            int number = Integer.parseInt(flightID.substring(7, dash));
+            return ("Flight-" + number + "-" + date).equals(flightID) ? number : -1;
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    // Writes a non-negative int in 7-bit groups, low group first
+    private static void writeVar(DataOutputStream out, int value) throws IOException {
+        while ((value & ~0x7F) != 0) {
+            out.writeByte((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte(value);
+    }
+
+    private static int readVar(ByteBuffer in) {
+        int value = 0;
+        int shift = 0;
+        byte b;
+        do {
+            if (shift > 28) {
+                throw new IllegalArgumentException("varint longer than 5 bytes at offset " + in.position());
+            }
+            b = in.get();
+            value |= (b & 0x7F) << shift;
+            shift += 7;
+        } while (b < 0);
+        if (value < 0) {
+            throw new IllegalArgumentException("negative varint at offset " + in.position());
+        }
+        return value;
+    }
+
+    // Reads the count of the entries that follow, each at least minBytes long, rejecting one the rest of the file
+    // cannot hold before anything is allocated for it
+    private static int readCount(ByteBuffer in, int minBytes) {
+        int count = readVar(in);
+        if ((long) count * minBytes > in.remaining()) {
+            throw new IllegalArgumentException(count + " entries do not fit in the " + in.remaining()
+                    + " bytes left at offset " + in.position());
+        }
+        return count;
+    }
+
+    // Writes a string as a var byte length followed by its UTF-8 bytes
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        writeVar(out, bytes.length);
+        out.write(bytes);
+    }
+
+    // Reads a string written by writeString
+    private static String readString(ByteBuffer in) {
+        byte[] bytes = new byte[readCount(in, 1)];
+        in.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
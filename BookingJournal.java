@@ -0,0 +1,433 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+public class BookingJournal {
+    static final int SYNC_BATCH = 32; // Number of records appended between two fsyncs
+    static final long SYNC_INTERVAL_MS = 50; // Maximum time a record may stay unsynced
+    static final int COMPACT_THRESHOLD = 10000; // Number of records after which a snapshot is taken
+    static final long GROUP_COMMIT_WINDOW_MS = Long.getLong("flight.journal.commitWindowMs", 0); // Time the writer waits for more records before a group commit
+    static final int GROUP_COMMIT_MAX_RECORDS = 1024; // Records that end the window early
+
+    private final Path path; // Path to the journal file
+    private final Path rotatedPath; // Journal being folded into a snapshot, kept until the snapshot is durable
+    private FileChannel channel; // Channel used to append records
+    private volatile long lastSeq; // Sequence number of the last record written or replayed
+    private volatile int recordCount; // Number of records in the current journal file
+    private int unsyncedRecords; // Number of records written since the last fsync
+    private long lastSyncTime; // Time of the last fsync in milliseconds
+    private long writtenSeq; // Sequence number of the last record written to the file
+    private long durableSeq; // Sequence number of the last record forced to disk
+    private StringBuilder pending = new StringBuilder(); // Records appended asynchronously and not written yet
+    private int pendingCount; // Number of records in pending
+    private final ArrayDeque<Commit> commits = new ArrayDeque<>(); // Asynchronous appends waiting to become durable, in sequence order
+    private Thread writer; // Writes and syncs asynchronous appends and syncs records left unsynced; started on demand
+    private IOException failure; // Why the file can no longer be trusted; appends fail until rotate starts a new file
+
+    // Future of an asynchronous append and the sequence number of its last record
+    private static class Commit {
+        final long seq;
+        final CompletableFuture<Long> future = new CompletableFuture<>();
+
+        Commit(long seq) {
+            this.seq = seq;
+        }
+    }
+
+    public BookingJournal(String fileName) {
+        this.path = Paths.get(fileName);
+        this.rotatedPath = Paths.get(fileName + ".old");
+        this.lastSyncTime = System.currentTimeMillis();
+    }
+
+    // Reads every complete record with a sequence number above snapshotSeq, including a rotated journal left by a crash
+    public List<String[]> readRecords(long snapshotSeq) {
+        List<String[]> records = new ArrayList<>();
+        lastSeq = snapshotSeq;
+        readRecords(rotatedPath, snapshotSeq, records);
+        recordCount = 0;
+        readRecords(path, snapshotSeq, records);
+        writtenSeq = durableSeq = lastSeq;
+        return records;
+    }
+
+    // Reads one journal file and drops a torn last line
+    private void readRecords(Path file, long snapshotSeq, List<String[]> records) {
+        if (!Files.exists(file)) {
+            return;
+        }
+
+        try {
+            byte[] bytes = Files.readAllBytes(file);
+            int end = bytes.length;
+            while (end > 0 && bytes[end - 1] != '\n') {
+                end--; // The last record was only partially written before a crash
+            }
+            if (end < bytes.length && file.equals(path)) {
+                System.err.println("Discarding torn record at the end of the journal.");
+                openChannel().truncate(end);
+            }
+
+            String content = new String(bytes, 0, end, StandardCharsets.UTF_8);
+            for (String line : content.split("\n")) {
+                if (line.isEmpty()) {
+                    continue;
+                }
+                String[] fields = line.split("\t");
+                long seq;
+                try {
+                    seq = Long.parseLong(fields[0]);
+                } catch (NumberFormatException e) {
+                    System.err.println("Skipping malformed journal record: " + line);
+                    continue;
+                }
+                recordCount++;
+                if (seq > snapshotSeq) {
+                    records.add(fields);
+                    lastSeq = Math.max(lastSeq, seq);
+                }
+            }
+        } catch (IOException e) {
+            System.err.println("Failed to read journal file: " + e.getMessage());
+        }
+    }
+
+    // Appends one record and forces it to disk once a batch has accumulated; a record left unsynced is forced by the
+    // writer thread within SYNC_INTERVAL_MS. Returns false if the record could not be written or synced, in which
+    // case the change it describes will not survive a restart.
+    public synchronized boolean append(String type, String... fields) {
+        if (!flushPending()) {
+            return false;
+        }
+        StringBuilder sb = new StringBuilder();
+        formatRecord(sb, type, fields, 0);
+        if (!write(sb, 1)) {
+            return false;
+        }
+        if (unsyncedRecords >= SYNC_BATCH || System.currentTimeMillis() - lastSyncTime >= SYNC_INTERVAL_MS) {
+            return sync();
+        }
+        scheduleSync();
+        return true;
+    }
+
+    // Appends several records with a single write and leaves them unsynced; each record is a type followed by its fields.
+    // The caller calls sync() once its whole batch has been appended. Returns false if the records could not be written.
+    public synchronized boolean appendAll(List<String[]> records) {
+        if (records.isEmpty()) {
+            return true;
+        }
+        if (!flushPending()) {
+            return false;
+        }
+        StringBuilder sb = new StringBuilder();
+        for (String[] record : records) {
+            formatRecord(sb, record[0], record, 1);
+        }
+        if (!write(sb, records.size())) {
+            return false;
+        }
+        scheduleSync();
+        return true;
+    }
+
+    // Appends records without touching the file; each record is a type followed by its fields. The records get their
+    // sequence numbers now, so they keep their place relative to other appends, and the journal writer thread writes
+    // and syncs them together with whatever else arrives within GROUP_COMMIT_WINDOW_MS and while its previous fsync runs.
+    // The returned future completes with the last record's sequence number once the records are durable.
+    public synchronized CompletableFuture<Long> appendAsync(List<String[]> records) {
+        if (failure != null) {
+            return CompletableFuture.failedFuture(failure);
+        }
+        if (records.isEmpty()) {
+            return CompletableFuture.completedFuture(lastSeq);
+        }
+        for (String[] record : records) {
+            formatRecord(pending, record[0], record, 1);
+        }
+        pendingCount += records.size();
+        Commit commit = new Commit(lastSeq);
+        commits.add(commit);
+        startWriter();
+        if (pendingCount == records.size() || pendingCount >= GROUP_COMMIT_MAX_RECORDS) {
+            notifyAll(); // The writer waits for the first record of a group and for a full group
+        }
+        return commit.future;
+    }
+
+    // Appends one record asynchronously, as appendAsync(List) does
+    public CompletableFuture<Long> appendAsync(String type, String... fields) {
+        String[] record = new String[fields.length + 1];
+        record[0] = type;
+        System.arraycopy(fields, 0, record, 1, fields.length);
+        return appendAsync(Collections.singletonList(record));
+    }
+
+    // Has the writer thread force the records written without a sync once SYNC_INTERVAL_MS has passed since the
+    // last one, so that a record is not left unsynced until the next append happens to come along
+    private void scheduleSync() {
+        if (unsyncedRecords > 0) {
+            startWriter();
+            notifyAll();
+        }
+    }
+
+    private void startWriter() {
+        if (writer == null) {
+            writer = new Thread(this::runWriter, "journal-writer");
+            writer.setDaemon(true);
+            writer.start();
+        }
+    }
+
+    // Group commit loop: writes the pending records under the lock, then forces them to disk outside it so that
+    // appends can continue and form the next group meanwhile. Between groups it also forces records that append
+    // and appendAll left unsynced once they are SYNC_INTERVAL_MS old.
+    private void runWriter() {
+        while (true) {
+            long target;
+            FileChannel syncChannel;
+            int groupSize;
+            synchronized (this) {
+                try {
+                    while (pendingCount == 0) {
+                        if (unsyncedRecords == 0 || channel == null || failure != null) {
+                            wait();
+                            continue;
+                        }
+                        long due = lastSyncTime + SYNC_INTERVAL_MS - System.currentTimeMillis();
+                        if (due <= 0) {
+                            break;
+                        }
+                        wait(due);
+                    }
+                    long deadline = System.currentTimeMillis() + GROUP_COMMIT_WINDOW_MS;
+                    for (long remaining = GROUP_COMMIT_WINDOW_MS; pendingCount > 0 && remaining > 0
+                            && pendingCount < GROUP_COMMIT_MAX_RECORDS; remaining = deadline - System.currentTimeMillis()) {
+                        wait(remaining);
+                    }
+                } catch (InterruptedException e) {
+                    return;
+                }
+                groupSize = pendingCount;
+                if (!flushPending() || writtenSeq <= durableSeq) {
+                    continue; // Nothing left to sync, or the write failed and its commits were failed
+                }
+                target = writtenSeq;
+                syncChannel = channel;
+            }
+
+            IOException failure = null;
+            try {
+                syncChannel.force(false);
+            } catch (ClosedChannelException e) {
+                continue; // Closed by rotate or close, which synced or failed the commits first
+            } catch (IOException e) {
+                failure = e;
+            }
+            synchronized (this) {
+                if (failure == null) {
+                    markDurable(target);
+                } else {
+                    // Not retried: a failed fsync may have dropped the written records, and a later fsync that
+                    // succeeds would report the records after them as durable with a gap before them
+                    System.err.println("Failed to sync journal file: " + failure.getMessage());
+                    fail(failure);
+                }
+            }
+            if (Metrics.ENABLED && groupSize > 0) {
+                Metrics.GROUP_COMMIT_RECORDS.record(groupSize);
+            }
+        }
+    }
+
+    // Writes the asynchronously appended records; returns false if the write failed, after failing their commits
+    private boolean flushPending() {
+        if (pendingCount == 0) {
+            return true;
+        }
+        StringBuilder records = pending;
+        int count = pendingCount;
+        long seq = lastSeq;
+        pending = new StringBuilder();
+        pendingCount = 0;
+        if (!write(records, count)) {
+            failCommits(seq, failure != null ? failure : new IOException("Failed to append to journal file"));
+            return false;
+        }
+        return true;
+    }
+
+    // Records that everything up to seq is on disk and completes the commits it covers
+    private void markDurable(long seq) {
+        durableSeq = Math.max(durableSeq, seq);
+        if (durableSeq == writtenSeq) {
+            unsyncedRecords = 0;
+            lastSyncTime = System.currentTimeMillis();
+        }
+        while (!commits.isEmpty() && commits.peek().seq <= durableSeq) {
+            Commit commit = commits.poll();
+            commit.future.complete(commit.seq);
+        }
+    }
+
+    private void failCommits(long seq, IOException failure) {
+        while (!commits.isEmpty() && commits.peek().seq <= seq) {
+            commits.poll().future.completeExceptionally(failure);
+        }
+    }
+
+    // Formats one record from its type and fields[from..]
+    private void formatRecord(StringBuilder sb, String type, String[] fields, int from) {
+        sb.append(++lastSeq).append('\t').append(type);
+        for (int i = from; i < fields.length; i++) {
+            sb.append('\t').append(fields[i]);
+        }
+        sb.append('\n');
+    }
+
+    // Writes formatted records to the journal file; returns false if the write failed. A failed write is cut off
+    // the file again and its sequence numbers are given out again, so that no half-written record is followed by
+    // the next one on the same line; if the file cannot be cut, the journal fails (see fail).
+    private boolean write(StringBuilder records, int count) {
+        if (failure != null) {
+            lastSeq = writtenSeq;
+            return false;
+        }
+        long goodSize = -1;
+        try {
+            FileChannel out = openChannel();
+            goodSize = out.size();
+            ByteBuffer buffer = ByteBuffer.wrap(records.toString().getBytes(StandardCharsets.UTF_8));
+            while (buffer.hasRemaining()) {
+                out.write(buffer);
+            }
+            recordCount += count;
+            unsyncedRecords += count;
+            writtenSeq = lastSeq; // Pending records are always written first, so everything up to lastSeq is in the file
+            return true;
+        } catch (IOException e) {
+            System.err.println("Failed to append to journal file: " + e.getMessage());
+            lastSeq = writtenSeq; // Every record after writtenSeq was part of this write
+            if (goodSize >= 0) {
+                try {
+                    channel.truncate(goodSize);
+                } catch (IOException truncateFailure) {
+                    fail(truncateFailure);
+                }
+            }
+            return false;
+        }
+    }
+
+    // Stops all appends after a failure that may leave the file with a torn or missing record before later ones, a
+    // failed fsync or a failed write that could not be cut off:
+    // every waiting commit fails, and so does every append until the next checkpoint rotates the journal and
+    // writes the state it can no longer hold to a snapshot
+    private void fail(IOException e) {
+        System.err.println("Journal failed, appends are refused until the next checkpoint: " + e.getMessage());
+        failure = e;
+        pending = new StringBuilder();
+        pendingCount = 0;
+        lastSeq = writtenSeq;
+        failCommits(Long.MAX_VALUE, e);
+    }
+
+    // Returns whether the journal failed and needs a checkpoint before it accepts appends again
+    public synchronized boolean isFailed() {
+        return failure != null;
+    }
+
+    // Forces all appended records to disk, including asynchronous ones; returns false if they could not be
+    public synchronized boolean sync() {
+        if (failure != null || !flushPending()) {
+            return false;
+        }
+        if (channel == null || writtenSeq <= durableSeq) {
+            return true;
+        }
+        try {
+            channel.force(false);
+            markDurable(writtenSeq);
+            return true;
+        } catch (IOException e) {
+            System.err.println("Failed to sync journal file: " + e.getMessage());
+            fail(e); // Not retried, as in runWriter
+            return false;
+        }
+    }
+
+    // Moves the current journal aside so that new records go to a fresh file while a snapshot is written
+    public synchronized void rotate() {
+        close();
+        try {
+            if (Files.exists(rotatedPath) && Files.exists(path)) {
+                // A previous snapshot never completed, so its rotated records are still needed
+                Files.write(rotatedPath, Files.readAllBytes(path), StandardOpenOption.APPEND, StandardOpenOption.SYNC);
+                Files.delete(path);
+            } else if (Files.exists(path)) {
+                Files.move(path, rotatedPath, StandardCopyOption.ATOMIC_MOVE);
+            }
+            recordCount = 0;
+            if (failure != null) {
+                // The snapshot this rotation is for holds everything the failed file may have lost
+                System.err.println("Journal reopened for the checkpoint after a failure.");
+                failure = null;
+                unsyncedRecords = 0;
+                writtenSeq = durableSeq = lastSeq;
+            }
+        } catch (IOException e) {
+            System.err.println("Failed to rotate journal file: " + e.getMessage());
+        }
+    }
+
+    // Deletes the rotated journal once a snapshot covering it is durable
+    public synchronized void dropRotated() {
+        try {
+            Files.deleteIfExists(rotatedPath);
+        } catch (IOException e) {
+            System.err.println("Failed to delete rotated journal file: " + e.getMessage());
+        }
+    }
+
+    // Syncs and closes the journal file
+    public synchronized void close() {
+        sync();
+        if (channel != null) {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                System.err.println("Failed to close journal file: " + e.getMessage());
+            }
+            channel = null;
+        }
+    }
+
+    public long getLastSeq() {
+        return lastSeq;
+    }
+
+    public int getRecordCount() {
+        return recordCount;
+    }
+
+    private FileChannel openChannel() throws IOException {
+        if (channel == null) {
+            channel = FileChannel.open(path, StandardOpenOption.CREATE,
+                    StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        }
+        return channel;
+    }
+}
@@ -0,0 +1,200 @@
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintStream;
+import java.io.Writer;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Drives a BookingServer with many concurrent clients and reports throughput and latency per request type.
+// Each client holds one connection and sends a mix of week searches, bookings and status lookups back to back.
+// Usage: java BookingLoadGenerator [port=0] [clients=1000] [seconds=10] [searchPercent=60] [bookPercent=30]
+//                                  [flightsPerDay=3] [days=365] [seats=180]
+// With port=0 a server is started in this JVM on a generated schedule of flightsPerDay x days flights; add
+// -Dflight.metrics=true to the JVM options to print its metrics at the end.
+public class BookingLoadGenerator {
+    static final LocalDate START_DATE = LocalDate.of(2025, 1, 1); // First day of the generated schedule
+    static int port = 0; // Port of the server to drive, or 0 to start one here
+    static int clients = 1000; // Concurrent connections
+    static int seconds = 10; // Length of the run
+    static int searchPercent = 60; // Share of requests that search a week
+    static int bookPercent = 30; // Share of requests that book; the rest look up a status
+    static int flightsPerDay = 3; // Flights per day of the generated schedule
+    static int days = 365; // Days of the generated schedule
+    static int seats = 180; // Capacity of every generated flight
+
+    private static final Metrics.Histogram searchLatency = new Metrics.Histogram();
+    private static final Metrics.Histogram bookLatency = new Metrics.Histogram();
+    private static final Metrics.Histogram statusLatency = new Metrics.Histogram();
+    private static final AtomicLong errors = new AtomicLong(); // Failed connections and ERR responses other than booking rejections
+    private static final AtomicLong passengerCounter = new AtomicLong(); // Keeps generated passport numbers unique
+
+    public static void main(String[] args) throws Exception {
+        for (String arg : args) {
+            String[] kv = arg.split("=");
+            int value = Integer.parseInt(kv[1]);
+            switch (kv[0]) {
+                case "port": port = value; break;
+                case "clients": clients = value; break;
+                case "seconds": seconds = value; break;
+                case "searchPercent": searchPercent = value; break;
+                case "bookPercent": bookPercent = value; break;
+                case "flightsPerDay": flightsPerDay = value; break;
+                case "days": days = value; break;
+                case "seats": seats = value; break;
+                default: throw new IllegalArgumentException("Unknown parameter: " + kv[0]);
+            }
+        }
+
+        BookingServer server = null;
+        if (port == 0) {
+            Path dir = Files.createTempDirectory("flight-load");
+            String csvFileName = dir.resolve("flights.csv").toString();
+            GenerateFlightsCsv.generate(csvFileName, START_DATE, START_DATE.plusDays(days - 1), flightsPerDay, seats);
+            PrintStream console = System.out;
+            System.setOut(new PrintStream(OutputStream.nullOutputStream())); // Loading prints progress; keep it quiet
+            Main.afs = new AnnualFlightScheduler(csvFileName, dir.resolve("flights.journal").toString());
+            System.setOut(console);
+            server = new BookingServer(Main.afs, 0);
+            BookingServer embedded = server;
+            Thread acceptor = new Thread(embedded::serve, "booking-acceptor");
+            acceptor.setDaemon(true);
+            acceptor.start();
+            port = server.getPort();
+        }
+
+        List<String[]> flights = fetchFlights();
+        List<String> flightIDs = new ArrayList<>();
+        for (String[] flight : flights) {
+            flightIDs.add(flight[0]);
+        }
+        LocalDate first = LocalDate.parse(flights.get(0)[1]); // Search rows come in date order
+        LocalDate last = LocalDate.parse(flights.get(flights.size() - 1)[1]);
+        System.out.println("clients=" + clients + " seconds=" + seconds + " searchPercent=" + searchPercent
+                + " bookPercent=" + bookPercent + " flights=" + flightIDs.size() + " port=" + port);
+
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(seconds);
+        ExecutorService executor = BookingServer.newConnectionExecutor("load-client");
+        long start = System.nanoTime();
+        for (int i = 0; i < clients; i++) {
+            executor.execute(() -> runClient(flightIDs, first, last, deadline));
+        }
+        executor.shutdown();
+        executor.awaitTermination(seconds + 60L, TimeUnit.SECONDS);
+        double elapsed = (System.nanoTime() - start) / 1e9;
+
+        long total = searchLatency.getCount() + bookLatency.getCount() + statusLatency.getCount();
+        System.out.printf("%d requests in %.1f s: %.0f requests/s, %d errors%n", total, elapsed, total / elapsed, errors.get());
+        print("SEARCH", searchLatency, elapsed);
+        print("BOOK", bookLatency, elapsed);
+        print("STATUS", statusLatency, elapsed);
+        if (Metrics.ENABLED) {
+            System.out.print(Metrics.report());
+        }
+
+        if (server != null) {
+            server.close();
+            System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+            Main.afs.close();
+        }
+    }
+
+    // Sends requests over one connection until the deadline
+    private static void runClient(List<String> flightIDs, LocalDate first, LocalDate last, long deadline) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        List<String> booked = new ArrayList<>(); // Passport numbers this client has booked
+        try (Socket socket = new Socket("127.0.0.1", port);
+             BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+             Writer out = new BufferedWriter(new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8))) {
+            socket.setTcpNoDelay(true);
+            long span = last.toEpochDay() - first.toEpochDay() + 1;
+            while (System.nanoTime() < deadline) {
+                int dice = random.nextInt(100);
+                String request;
+                Metrics.Histogram latency;
+                if (dice < searchPercent || (dice >= searchPercent + bookPercent && booked.isEmpty())) {
+                    LocalDate from = first.plusDays(random.nextLong(span));
+                    request = "SEARCH\t" + from + "\t" + from.plusDays(6);
+                    latency = searchLatency;
+                } else if (dice < searchPercent + bookPercent) {
+                    String passportNum = "L" + passengerCounter.incrementAndGet();
+                    request = "BOOK\t" + flightIDs.get(random.nextInt(flightIDs.size())) + "\tLoad Passenger\t" + passportNum;
+                    booked.add(passportNum);
+                    latency = bookLatency;
+                } else {
+                    request = "STATUS\t" + booked.get(random.nextInt(booked.size()));
+                    latency = statusLatency;
+                }
+
+                long t0 = System.nanoTime();
+                out.write(request);
+                out.write('\n');
+                out.flush();
+                String response = readResponse(in);
+                latency.record(System.nanoTime() - t0);
+                if (response.startsWith("ERR") && latency != bookLatency) {
+                    errors.incrementAndGet();
+                }
+            }
+            out.write("QUIT\n");
+            out.flush();
+        } catch (IOException e) {
+            errors.incrementAndGet();
+        }
+    }
+
+    // Reads one response, including the rows that follow an "OK <count>" line, and returns its first line
+    private static String readResponse(BufferedReader in) throws IOException {
+        String line = in.readLine();
+        if (line == null) {
+            throw new IOException("Server closed the connection");
+        }
+        if (line.startsWith("OK ") && Character.isDigit(line.charAt(3))) {
+            for (int rows = Integer.parseInt(line.substring(3)); rows > 0; rows--) {
+                in.readLine();
+            }
+        }
+        return line;
+    }
+
+    // Returns the search rows of every flight on the server, found with one search over a wide date range
+    private static List<String[]> fetchFlights() throws IOException {
+        try (Socket socket = new Socket("127.0.0.1", port);
+             BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+             Writer out = new BufferedWriter(new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8))) {
+            out.write("SEARCH\t1900-01-01\t2999-12-31\nQUIT\n");
+            out.flush();
+            String header = in.readLine();
+            if (header == null || !header.startsWith("OK ")) {
+                throw new IOException("Search failed: " + header);
+            }
+            List<String[]> flights = new ArrayList<>();
+            for (int rows = Integer.parseInt(header.substring(3)); rows > 0; rows--) {
+                flights.add(in.readLine().split("\t"));
+            }
+            if (flights.isEmpty()) {
+                throw new IOException("The server has no flights");
+            }
+            return flights;
+        }
+    }
+
+    private static void print(String name, Metrics.Histogram latency, double elapsed) {
+        System.out.printf("%-7s %9d requests %9.0f/s  mean %8.1f us  p50 %8.1f us  p99 %8.1f us  p999 %8.1f us  max %8.1f us%n",
+                name, latency.getCount(), latency.getCount() / elapsed, latency.getMean() / 1e3,
+                latency.getPercentile(50) / 1e3, latency.getPercentile(99) / 1e3, latency.getPercentile(99.9) / 1e3,
+                latency.getMax() / 1e3);
+    }
+}
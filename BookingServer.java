@@ -0,0 +1,328 @@
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+// Serves the booking operations over a line protocol on a local TCP socket.
+//
+// Every request is one line of tab-separated fields and gets one response line starting with OK or ERR;
+// responses that carry rows say how many follow ("OK 3" and three lines). Requests:
+//   SEARCH <from> <to> [vacant]          rows: flightID, date, capacity, confirmed, empty, waitlisted
+//   BOOK <flightID> <name> <passport> [BUSINESS|ECONOMY] [NONE|SILVER|GOLD|PLATINUM]
+//                                        OK CONFIRMED | OK WAITLISTED | ERR DUPLICATE | ERR TICKET_LIMIT | ERR NOT_FOUND
+//   CANCEL <flightID> <passport>         OK CANCELED | ERR NOT_FOUND
+//   EDIT <passport> <newName> <newPassport>   OK | ERR NOT_FOUND | ERR PASSPORT_TAKEN (empty fields are left unchanged)
+//   HOLD <flightID> [BUSINESS|ECONOMY] [seconds]   OK <holdID> <seat> <deadline in epoch ms> | ERR FULL | ERR NOT_FOUND
+//   CONFIRM <holdID> <name> <passport>   OK CONFIRMED | ERR NOT_HELD | ERR DUPLICATE | ERR TICKET_LIMIT
+//   RELEASE <holdID>                     OK RELEASED | ERR NOT_HELD
+//   STATUS <passport>                    rows: flightID, status, seat (1-based, 0 if none), waiting list position (0 if none)
+//   METRICS                              rows: name value
+//   QUIT
+// Every change is answered only after its journal record is synced, waiting outside the flight's lock; concurrent
+// connections share the journal writer's fsyncs. A change whose record cannot be written or synced is answered with
+// ERR NOT_DURABLE: it took effect in memory but will not survive a restart.
+//
+// ShardRouter serves the same protocol in front of several servers that each own a range of dates.
+//
+// Each connection runs on its own thread: a virtual thread when the JVM has them (Java 21 and later),
+// otherwise a thread from a cached pool. Blocking I/O on virtual threads does not tie up a carrier thread.
+public class BookingServer {
+    static final int DEFAULT_PORT = 7070;
+    static final int IDLE_TIMEOUT_MS = 60_000; // Connections idle for longer are closed
+    static final int BACKLOG = 4096; // Pending connections the OS may queue while the accept loop catches up
+    static final long DEFAULT_HOLD_SECONDS = 600; // Hold time when a HOLD request gives none
+
+    private final AnnualFlightScheduler afs;
+    private final ServerSocket serverSocket;
+    private final ExecutorService connections = newConnectionExecutor("booking-connection");
+    private final AtomicInteger openConnections = new AtomicInteger();
+    private final TraceRecorder trace = TraceRecorder.FILE_NAME == null ? null : new TraceRecorder(TraceRecorder.FILE_NAME); // Requests received, with -Dflight.trace
+    private volatile boolean running = true;
+
+    public BookingServer(AnnualFlightScheduler afs, int port) throws IOException {
+        this.afs = afs;
+        this.serverSocket = new ServerSocket();
+        serverSocket.setReuseAddress(true);
+        serverSocket.bind(new InetSocketAddress("127.0.0.1", port), BACKLOG);
+    }
+
+    // Starts the server: java BookingServer [port] [snapshot file or partition directory] [journal file]
+    public static void main(String[] args) throws IOException {
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_PORT;
+        if (args.length > 2) {
+            AnnualFlightScheduler.SnapshotFormat format = Files.isDirectory(Paths.get(args[1]))
+                    ? AnnualFlightScheduler.SnapshotFormat.PARTITIONED : AnnualFlightScheduler.SnapshotFormat.CSV;
+            Main.afs = new AnnualFlightScheduler(args[1], args[2], format);
+        } else {
+            Main.afs = new AnnualFlightScheduler();
+        }
+        BookingServer server = new BookingServer(Main.afs, port);
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            server.close();
+            Main.afs.close(); // Write a final snapshot and close the journal
+        }));
+        System.out.println("Booking server listening on port " + server.getPort());
+        server.serve();
+    }
+
+    // Returns an executor that runs each task on a new virtual thread, or on a cached pool when the JVM has none
+    static ExecutorService newConnectionExecutor(String name) {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            AtomicInteger count = new AtomicInteger();
+            ThreadFactory factory = task -> {
+                Thread thread = new Thread(null, task, name + "-" + count.incrementAndGet(), 256 * 1024);
+                thread.setDaemon(true);
+                return thread;
+            };
+            return Executors.newCachedThreadPool(factory);
+        }
+    }
+
+    // Accepts connections until close is called
+    public void serve() {
+        while (running) {
+            try {
+                Socket socket = serverSocket.accept();
+                connections.execute(() -> handleConnection(socket));
+            } catch (IOException e) {
+                if (running) {
+                    System.err.println("Failed to accept a connection: " + e.getMessage());
+                }
+            }
+        }
+    }
+
+    public void close() {
+        running = false;
+        try {
+            serverSocket.close();
+        } catch (IOException e) {
+            System.err.println("Failed to close the server socket: " + e.getMessage());
+        }
+        connections.shutdownNow();
+        if (trace != null) {
+            trace.close();
+        }
+    }
+
+    public int getPort() {
+        return serverSocket.getLocalPort();
+    }
+
+    public int getOpenConnections() {
+        return openConnections.get();
+    }
+
+    private void handleConnection(Socket socket) {
+        openConnections.incrementAndGet();
+        try (socket;
+             BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+             Writer out = new BufferedWriter(new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8))) {
+            socket.setSoTimeout(IDLE_TIMEOUT_MS);
+            socket.setTcpNoDelay(true);
+            String line;
+            while ((line = in.readLine()) != null) {
+                if (trace != null) {
+                    trace.record(line);
+                }
+                if (line.equals("QUIT")) {
+                    out.write("OK\n");
+                    break;
+                }
+                out.write(handle(line));
+                out.flush();
+            }
+            out.flush();
+        } catch (SocketTimeoutException e) {
+            // Idle client; closing the socket is all there is to do
+        } catch (IOException e) {
+            if (running) {
+                System.err.println("Connection failed: " + e.getMessage());
+            }
+        } finally {
+            openConnections.decrementAndGet();
+        }
+    }
+
+    // Executes one request line and returns the complete response, ending in a newline
+    String handle(String line) {
+        String[] fields = line.split("\t", -1);
+        try {
+            switch (fields[0]) {
+                case "SEARCH":
+                    return search(fields);
+                case "BOOK": {
+                    requireFields(fields, 4);
+                    SeatMap.Cabin cabin = fields.length > 4 && !fields[4].isEmpty()
+                            ? SeatMap.Cabin.valueOf(fields[4].toUpperCase()) : SeatMap.Cabin.ECONOMY;
+                    Ticket.LoyaltyTier loyaltyTier = fields.length > 5 && !fields[5].isEmpty()
+                            ? Ticket.LoyaltyTier.valueOf(fields[5].toUpperCase()) : Ticket.LoyaltyTier.NONE;
+                    return result(BatchOperation.book(fields[1], fields[3], fields[2], cabin, loyaltyTier));
+                }
+                case "CANCEL":
+                    requireFields(fields, 3);
+                    return result(BatchOperation.cancel(fields[1], fields[2]));
+                case "EDIT":
+                    return edit(fields);
+                case "STATUS":
+                    return status(fields);
+                case "HOLD":
+                    return hold(fields);
+                case "CONFIRM":
+                    return confirm(fields);
+                case "RELEASE": {
+                    requireFields(fields, 2);
+                    SeatHold hold = afs.getHold(Long.parseLong(fields[1]));
+                    return hold != null && hold.getFlight().releaseHold(hold) ? "OK RELEASED\n" : "ERR NOT_HELD\n";
+                }
+                case "METRICS":
+                    return rows(List.of(Metrics.report().split("\n")));
+                default:
+                    return "ERR UNKNOWN_COMMAND\n";
+            }
+        } catch (IllegalArgumentException | DateTimeParseException e) {
+            return "ERR BAD_REQUEST " + e.getMessage().replace('\n', ' ') + "\n";
+        } catch (CompletionException e) {
+            return "ERR NOT_DURABLE\n"; // Applied in memory, but its journal record could not be written or synced
+        }
+    }
+
+    private String search(String[] fields) {
+        requireFields(fields, 3);
+        LocalDate from = LocalDate.parse(fields[1], AnnualFlightScheduler.formatter);
+        LocalDate to = LocalDate.parse(fields[2], AnnualFlightScheduler.formatter);
+        boolean vacantOnly = fields.length > 3 && fields[3].equals("vacant");
+        return searchResponse(from, to, vacantOnly);
+    }
+
+    // Answers a SEARCH from the availability cache and records its latency with the console's searches
+    static String searchResponse(LocalDate from, LocalDate to, boolean vacantOnly) {
+        long start = Metrics.ENABLED ? System.nanoTime() : 0;
+        String response = AnnualFlightScheduler.availabilityCache.getResponse(from, to, vacantOnly);
+        if (Metrics.ENABLED) {
+            Metrics.SEARCH.record(System.nanoTime() - start);
+        }
+        return response;
+    }
+
+    // Renders a SEARCH response with every flight read as of the same version; AvailabilityCache keeps these
+    static String renderSearch(LocalDate from, LocalDate to, boolean vacantOnly) {
+        try (ReadView readView = ReadView.open()) {
+            List<String> rows = readView.flights(from, to)
+                    .filter(vacantOnly ? FlightView::hasVacancy : flight -> true)
+                    .map(flight -> flight.getFlightID() + "\t" + flight.getDate() + "\t" + flight.getCapacity() + "\t"
+                            + flight.getConfirmedSeats() + "\t" + flight.getEmptySeats() + "\t" + flight.getWaitlistCount())
+                    .collect(Collectors.toList());
+            return rows(rows);
+        }
+    }
+
+    private String result(BatchOperation operation) {
+        BatchOperation.Result result = afs.applyBatchAsync(List.of(operation)).join().get(0);
+        switch (result) {
+            case CONFIRMED:
+            case WAITLISTED:
+            case CANCELED:
+                return "OK " + result + "\n";
+            default:
+                return "ERR " + result + "\n";
+        }
+    }
+
+    private String edit(String[] fields) {
+        requireFields(fields, 4);
+        Passenger passenger = afs.getPassengerInfo(fields[1]);
+        if (passenger == null) {
+            return "ERR NOT_FOUND\n";
+        }
+        return afs.editPassenger(passenger, fields[2], fields[3]) ? "OK\n" : "ERR PASSPORT_TAKEN\n";
+    }
+
+    private String hold(String[] fields) {
+        requireFields(fields, 2);
+        SeatMap.Cabin cabin = fields.length > 2 && !fields[2].isEmpty()
+                ? SeatMap.Cabin.valueOf(fields[2].toUpperCase()) : SeatMap.Cabin.ECONOMY;
+        long seconds = fields.length > 3 && !fields[3].isEmpty() ? Long.parseLong(fields[3]) : DEFAULT_HOLD_SECONDS;
+        if (seconds <= 0) {
+            throw new IllegalArgumentException("Hold time must be positive");
+        }
+        Flight flight = AnnualFlightScheduler.processFlightID(fields[1]);
+        if (flight == null) {
+            return "ERR NOT_FOUND\n";
+        }
+        SeatHold hold = flight.holdSeat(cabin, seconds * 1000);
+        if (hold == null) {
+            return "ERR FULL\n";
+        }
+        return "OK " + hold.getId() + " " + (hold.getSeat() + 1) + " " + hold.getDeadline() + "\n";
+    }
+
+    private String confirm(String[] fields) {
+        requireFields(fields, 4);
+        SeatHold hold = afs.getHold(Long.parseLong(fields[1]));
+        if (hold == null) {
+            return "ERR NOT_HELD\n";
+        }
+        Passenger passenger = afs.registerPassenger(fields[3], fields[2]);
+        if (hold.getFlight().confirmHold(hold, passenger) == null) {
+            if (hold.getStatus() != SeatHold.Status.HELD) {
+                return "ERR NOT_HELD\n";
+            }
+            return passenger.findTicket(hold.getFlight()) != null ? "ERR DUPLICATE\n" : "ERR TICKET_LIMIT\n";
+        }
+        return "OK CONFIRMED\n";
+    }
+
+    private String status(String[] fields) {
+        requireFields(fields, 2);
+        Passenger passenger = afs.getPassengerInfo(fields[1]);
+        if (passenger == null) {
+            return "ERR NOT_FOUND\n";
+        }
+        List<String> rows = new ArrayList<>();
+        for (Ticket ticket : passenger.getTickets().toArray(new Ticket[0])) {
+            Flight.TicketState state = ticket.getFlight().getTicketState(ticket);
+            if (state.status == null) {
+                continue; // Booking still in progress
+            }
+            rows.add(ticket.getFlight().flightID + "\t" + state.status + "\t" + (state.seat + 1) + "\t"
+                    + state.waitlistPosition);
+        }
+        return rows(rows);
+    }
+
+    static String rows(List<String> rows) {
+        StringBuilder sb = new StringBuilder("OK ").append(rows.size()).append('\n');
+        for (String row : rows) {
+            sb.append(row).append('\n');
+        }
+        return sb.toString();
+    }
+
+    static void requireFields(String[] fields, int count) {
+        if (fields.length < count) {
+            throw new IllegalArgumentException(fields[0] + " needs " + (count - 1) + " arguments");
+        }
+    }
+}
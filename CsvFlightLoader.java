@@ -0,0 +1,267 @@
+import java.io.IOException;
+import java.io.EOFException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.time.DateTimeException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+// Loads the flight CSV by cutting it into line-aligned chunks and parsing the chunks in parallel, each read into a
+// heap buffer of its own by the task that parses it. The file is not memory-mapped: a mapping stays open until it is
+// garbage collected, and on Windows an open mapping makes saving a new snapshot over the file fail.
+public class CsvFlightLoader {
+    static final int MIN_CHUNK_SIZE = 1 << 20; // Smallest chunk worth handing to another thread
+    static final int MAX_CHUNK_SIZE = 1 << 24; // Largest chunk, which bounds the buffer each parser holds
+    private static final int FIELD_COUNT = 11; // Columns up to and including Held Seats
+
+    private final AnnualFlightScheduler afs; // Scheduler that builds flights and owns the passenger index
+    private final Path path; // CSV file to load
+    private long snapshotSeq; // Journal sequence number found in the header
+
+    public CsvFlightLoader(AnnualFlightScheduler afs, String fileName) {
+        this.afs = afs;
+        this.path = Paths.get(fileName);
+    }
+
+    // Parses the whole file and returns its flights in file order
+    public List<Flight> load() throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+            long dataStart = readHeader(channel);
+
+            List<long[]> chunks = splitIntoChunks(channel, dataStart, size);
+            List<ForkJoinTask<List<Flight>>> tasks = new ArrayList<>(chunks.size());
+            for (long[] chunk : chunks) {
+                tasks.add(ForkJoinPool.commonPool().submit(() -> new ChunkParser(readChunk(channel, chunk[0], chunk[1])).parse()));
+            }
+
+            List<Flight> flights = new ArrayList<>();
+            try {
+                for (ForkJoinTask<List<Flight>> task : tasks) {
+                    flights.addAll(task.join()); // Chunks are joined in file order so flight numbers keep their positions
+                }
+            } catch (RuntimeException e) {
+                tasks.forEach(ForkJoinTask::quietlyJoin); // The channel is closed only once no task reads from it
+                if (e instanceof UncheckedIOException) {
+                    throw ((UncheckedIOException) e).getCause();
+                }
+                throw e;
+            }
+            return flights;
+        }
+    }
+
+    // Reads the bytes [start, end) with positional reads, which tasks can run on one channel at the same time
+    private static ByteBuffer readChunk(FileChannel channel, long start, long end) {
+        ByteBuffer buffer = ByteBuffer.allocate((int) (end - start));
+        try {
+            while (buffer.hasRemaining()) {
+                if (channel.read(buffer, start + buffer.position()) < 0) {
+                    throw new EOFException("CSV file shrank while it was loaded");
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return buffer;
+    }
+
+    public long getSnapshotSeq() {
+        return snapshotSeq;
+    }
+
+    // Reads the header line and returns the offset of the first data row
+    private long readHeader(FileChannel channel) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(4096);
+        StringBuilder header = new StringBuilder();
+        long pos = 0;
+        while (channel.read(buffer, pos) > 0) {
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                byte b = buffer.get();
+                pos++;
+                if (b == '\n') {
+                    parseHeader(header.toString());
+                    return pos;
+                }
+                header.append((char) b);
+            }
+            buffer.clear();
+        }
+        parseHeader(header.toString());
+        return pos;
+    }
+
+    private void parseHeader(String header) {
+        int marker = header.indexOf(AnnualFlightScheduler.SEQ_MARKER);
+        if (marker >= 0) {
+            snapshotSeq = Long.parseLong(header.substring(marker + AnnualFlightScheduler.SEQ_MARKER.length()).trim());
+        }
+    }
+
+    // Cuts [start, end) into chunks that each begin right after a newline
+    private List<long[]> splitIntoChunks(FileChannel channel, long start, long end) throws IOException {
+        int parallelism = ForkJoinPool.commonPool().getParallelism();
+        long chunkSize = Math.max(MIN_CHUNK_SIZE, Math.min(MAX_CHUNK_SIZE, (end - start) / (parallelism * 4L) + 1));
+
+        List<long[]> chunks = new ArrayList<>();
+        ByteBuffer probe = ByteBuffer.allocate(1024);
+        while (start < end) {
+            long boundary = Math.min(end, start + chunkSize);
+            while (boundary < end) {
+                probe.clear();
+                int read = channel.read(probe, boundary);
+                int newline = -1;
+                for (int i = 0; i < read; i++) {
+                    if (probe.get(i) == '\n') {
+                        newline = i;
+                        break;
+                    }
+                }
+                if (newline >= 0) {
+                    boundary += newline + 1;
+                    break;
+                }
+                boundary += Math.max(read, 1);
+            }
+            chunks.add(new long[] {start, Math.min(boundary, end)});
+            start = boundary;
+        }
+        return chunks;
+    }
+
+    // Parses the rows of one chunk; each parser runs on its own thread and keeps its own scratch state
+    private class ChunkParser {
+        private final ByteBuffer buffer; // Bytes of the chunk
+        private final int[] fieldStart = new int[FIELD_COUNT]; // Start offset of each field in the current row
+        private final int[] fieldEnd = new int[FIELD_COUNT]; // End offset of each field in the current row
+        private byte[] scratch = new byte[256]; // Reused when a field has to become a String
+        private int lastPackedDate = -1; // yyyymmdd of the previous row, to reuse its LocalDate
+        private LocalDate lastDate;
+
+        ChunkParser(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        List<Flight> parse() {
+            List<Flight> flights = new ArrayList<>();
+            int limit = buffer.limit();
+            int lineStart = 0;
+            while (lineStart < limit) {
+                int lineEnd = lineStart;
+                while (lineEnd < limit && buffer.get(lineEnd) != '\n') {
+                    lineEnd++;
+                }
+                int contentEnd = lineEnd > lineStart && buffer.get(lineEnd - 1) == '\r' ? lineEnd - 1 : lineEnd;
+                if (contentEnd > lineStart) {
+                    Flight flight = parseRow(lineStart, contentEnd);
+                    if (flight != null) {
+                        flights.add(flight);
+                    }
+                }
+                lineStart = lineEnd + 1;
+            }
+            return flights;
+        }
+
+        private Flight parseRow(int start, int end) {
+            int fields = 0;
+            int fieldBegin = start;
+            for (int i = start; i <= end && fields < FIELD_COUNT; i++) {
+                if (i == end || buffer.get(i) == ',') {
+                    fieldStart[fields] = fieldBegin;
+                    fieldEnd[fields] = i;
+                    fields++;
+                    fieldBegin = i + 1;
+                }
+            }
+            // Trailing empty columns are not counted, matching String.split
+            while (fields > 0 && fieldStart[fields - 1] == fieldEnd[fields - 1]) {
+                fields--;
+            }
+            if (fields < 8) {
+                System.err.println("CSV format error: insufficient fields in line: " + decode(start, end));
+                return null;
+            }
+
+            String flightID = decode(fieldStart[0], fieldEnd[0]);
+            LocalDate date = parseDate(fieldStart[1], fieldEnd[1]);
+            if (date == null) {
+                System.err.println("Invalid date format in CSV: " + decode(fieldStart[1], fieldEnd[1]));
+                return null;
+            }
+
+            int capacity = Flight.defaultSeats;
+            int businessSeats = 0;
+            if (fields >= 10) {
+                capacity = parseInt(fieldStart[8], fieldEnd[8]);
+                businessSeats = parseInt(fieldStart[9], fieldEnd[9]);
+            }
+            int heldSeats = fields >= 11 ? Math.max(parseInt(fieldStart[10], fieldEnd[10]), 0) : 0;
+
+            // Passenger columns are usually empty; only non-empty ones are turned into Strings
+            String confirmedPassengersStr = fieldStart[3] == fieldEnd[3] ? "" : decode(fieldStart[3], fieldEnd[3]);
+            String waitlistedPassengersStr = fieldStart[4] == fieldEnd[4] ? "" : decode(fieldStart[4], fieldEnd[4]);
+
+            return afs.createFlight(flightID, date,
+                    parseInt(fieldStart[5], fieldEnd[5]), parseInt(fieldStart[6], fieldEnd[6]),
+                    capacity, businessSeats, heldSeats, confirmedPassengersStr, waitlistedPassengersStr);
+        }
+
+        // Parses yyyy-MM-dd without creating Strings; returns null if the field is not a valid date
+        private LocalDate parseDate(int start, int end) {
+            if (end - start != 10 || buffer.get(start + 4) != '-' || buffer.get(start + 7) != '-') {
+                return null;
+            }
+            int year = parseInt(start, start + 4);
+            int month = parseInt(start + 5, start + 7);
+            int day = parseInt(start + 8, start + 10);
+            if (year < 0 || month < 0 || day < 0) {
+                return null;
+            }
+            int packed = year * 10000 + month * 100 + day;
+            if (packed != lastPackedDate) {
+                try {
+                    lastDate = LocalDate.of(year, month, day);
+                } catch (DateTimeException e) {
+                    return null;
+                }
+                lastPackedDate = packed;
+            }
+            return lastDate;
+        }
+
+        // Parses a non-negative decimal number; returns -1 if the field is empty or not a number
+        private int parseInt(int start, int end) {
+            if (start == end || end - start > 9) {
+                return -1;
+            }
+            int value = 0;
+            for (int i = start; i < end; i++) {
+                int digit = buffer.get(i) - '0';
+                if (digit < 0 || digit > 9) {
+                    return -1;
+                }
+                value = value * 10 + digit;
+            }
+            return value;
+        }
+
+        private String decode(int start, int end) {
+            int length = end - start;
+            if (scratch.length < length) {
+                scratch = new byte[Math.max(length, scratch.length * 2)];
+            }
+            buffer.get(start, scratch, 0, length);
+            return new String(scratch, 0, length, StandardCharsets.UTF_8);
+        }
+    }
+}
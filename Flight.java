@@ -1,29 +1,53 @@
-import java.util.ArrayList;
-import java.util.LinkedList;
-import java.util.Queue;
+import java.time.LocalDate;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.locks.ReentrantLock;
 
+// A flight's identity, seat map and manifests; its counters live in a FlightInventory slot
 public class Flight {
     String flightID; // Unique identifier for the flight
-    public static final int maxSeats = 5; // Maximum number of seats on the flight
-    ArrayList<Passenger> confirmedTicketList; // List of passengers with confirmed tickets
-    Queue<Passenger> waitingList; // Queue of passengers on the waiting list
-    boolean vacancyStatus; // Indicates if the flight has available seats
-    private int confirmedSeats; // Number of confirmed seats
-    private int emptySeats; // Number of empty seats
+    final LocalDate date; // Departure date of the flight
+    public static final int defaultSeats = 5; // Seat capacity used when a flight does not specify one
+    final SeatMap seatMap; // Seat assignments per cabin
+    Manifest confirmedTicketList; // Confirmed tickets, in booking order; Manifest.EMPTY until the first one
+    Waitlist waitingList; // Waitlisted tickets, in the order of the waitlist policy; Waitlist.EMPTY until the first one
+    volatile boolean vacancyStatus; // Indicates if the flight has available seats
+    volatile FlightInventory inventory; // Store holding this flight's capacity, seat and waitlist counters
+    int slot; // This flight's slot in the inventory
+    int heldSeats; // Seats reserved by holds that are neither confirmed nor released; guarded by the lock
+    volatile boolean detached; // Set when the flight's partition is evicted; a reloaded partition has new Flight objects
+    final ReentrantLock lock = new ReentrantLock(); // Guards the manifest, seat map and counters of this flight
+    volatile FlightView view; // Last published state, read by searches and status pages without the lock (see ReadView)
+    private boolean viewStale; // Changed since view was published; guarded by the lock
+    private boolean seatCountsChanged; // The seat counts changed since view was published, so cached searches are stale
+    private int pendingChanges; // FlightEvent.Change bits of what was done since view was published
 
 
-    public Flight(String flightID) {
+    public Flight(String flightID, LocalDate date) {
+        this(flightID, date, defaultSeats, 0);
+    }
+
+    public Flight(String flightID, LocalDate date, int economySeats, int businessSeats) {
         this.flightID = flightID;
-        this.confirmedTicketList = new ArrayList<>();
-        this.waitingList = new LinkedList<>();
+        this.date = date;
+        this.seatMap = new SeatMap(economySeats, businessSeats);
+        this.confirmedTicketList = Manifest.EMPTY; // Most flights in a long schedule are never booked
+        this.waitingList = Waitlist.EMPTY;
         vacancyStatus = true;
-        confirmedSeats = 0;
-        emptySeats = maxSeats;
+        inventory = AnnualFlightScheduler.inventory;
+        slot = inventory.allocate(this);
+        inventory.set(slot, FlightInventory.CAPACITY, seatMap.getCapacity());
+        inventory.set(slot, FlightInventory.EMPTY, seatMap.getCapacity());
+        view = new FlightView(this);
     }
 
-    // Checks if the flight is full
+    // Checks if the flight is full; held seats count as taken
     public boolean isFull() {
-        return confirmedTicketList.size() >= maxSeats;
+        return confirmedTicketList.size() + heldSeats >= getCapacity();
+    }
+
+    // Checks if the flight has at least one unassigned seat
+    public boolean hasVacancy() {
+        return getEmptySeats() > 0;
     }
 
     // Updates the vacancy status of the flight
@@ -33,135 +57,554 @@ public class Flight {
 
     // Books a flight for a passenger
     public void bookFlight(Passenger passenger, Flight flight) {
-        
-        // Check if the passenger has already booked or is on the waiting list
-        if (confirmedTicketList.contains(passenger)) {
-            System.out.println("Passenger " + passenger.getName() + " has already booked this flight.");
-            return;
-        }
-    
-        if (waitingList.contains(passenger)) {
-            System.out.println("Passenger " + passenger.getName() + " is already in the waiting list.");
-            return;
-        }   
-        
-        Ticket bookingTicket = new Ticket(passenger, flight);
-        passenger.addTicketToBucket(bookingTicket);
-
-        if (!isFull()) {
-            bookingTicket.setStatus("confirmed");
-            addConfirmedPassenger(passenger);
+        bookFlight(passenger, flight, SeatMap.Cabin.ECONOMY);
+    }
+
+    // Books a flight for a passenger in the preferred cabin
+    public void bookFlight(Passenger passenger, Flight flight, SeatMap.Cabin cabin) {
+        long start = Metrics.ENABLED ? System.nanoTime() : 0;
+        Ticket ticket;
+        boolean alreadyConfirmed = false;
+        boolean alreadyWaiting = false;
+        CompletableFuture<Long> durable = null;
+        lock.lock();
+        try {
+            ticket = placePassenger(passenger, cabin);
+            if (ticket == null) {
+                Ticket existing = passenger.findTicket(this);
+                alreadyConfirmed = existing != null && existing.getStatus() == Ticket.Status.CONFIRMED;
+                alreadyWaiting = existing != null && existing.getStatus() == Ticket.Status.WAITING_LIST;
+            } else {
+                durable = Main.afs.recordBooking(this, passenger, cabin, ticket.getLoyaltyTier()); // Append the booking to the journal
+            }
+        } finally {
+            unlock();
+        }
+        boolean journaled = durable == null || AnnualFlightScheduler.awaitDurable(durable); // Synced outside the lock
+        if (Metrics.ENABLED) {
+            Metrics.BOOK.record(System.nanoTime() - start); // Console output and checkpoints are not part of the latency
+            if (ticket != null) {
+                (ticket.getStatus() == Ticket.Status.CONFIRMED ? Metrics.BOOKINGS_CONFIRMED : Metrics.BOOKINGS_WAITLISTED).increment();
+            }
+        }
+
+        if (ticket == null) {
+            if (alreadyConfirmed) {
+                System.out.println("Passenger " + passenger.getName() + " has already booked this flight.");
+            } else if (alreadyWaiting) {
+                System.out.println("Passenger " + passenger.getName() + " is already in the waiting list.");
+            }
+            return; // Otherwise the passenger holds too many tickets, which addTicketToBucket has reported
+        }
+
+        if (ticket.getStatus() == Ticket.Status.CONFIRMED) {
             System.out.println("Ticket confirmed for passenger: " + passenger.getName());
         } else {
-            bookingTicket.setStatus("waiting list");
-            addWaitlistedPassenger(passenger);
             System.out.println("The flight is fully booked. Passenger " + passenger.getName() + " added to the waiting list.");
         }
+        if (!journaled) {
+            System.err.println("Warning: the booking could not be saved to the journal and will be lost on restart.");
+        }
+        Main.afs.checkpointIfNeeded();
+    }
+
+    // Places a passenger on the flight without printing or journaling; returns the new ticket,
+    // or null if the passenger is already on this flight or holds too many tickets
+    Ticket placePassenger(Passenger passenger, SeatMap.Cabin cabin) {
+        return placePassenger(passenger, cabin, Ticket.LoyaltyTier.NONE);
+    }
+
+    // Places a passenger who booked with a loyalty tier, which orders them on the waiting list under the priority policy
+    Ticket placePassenger(Passenger passenger, SeatMap.Cabin cabin, Ticket.LoyaltyTier loyaltyTier) {
+        lock.lock();
+        try {
+            // Check if the passenger has already booked or is on the waiting list; an evicted flight takes no bookings
+            if (detached || passenger.findTicket(this) != null) {
+                return null;
+            }
+
+            Ticket bookingTicket = new Ticket(passenger, this, cabin);
+            bookingTicket.setLoyaltyTier(loyaltyTier);
+            if (!addToPassenger(bookingTicket)) {
+                return null;
+            }
+
+            if (!isFull()) {
+                addConfirmedTicket(bookingTicket);
+                seatsChanged();
+                pendingChanges |= FlightEvent.Change.BOOKED.bit;
+            } else {
+                addWaitlistedTicket(bookingTicket);
+                pendingChanges |= FlightEvent.Change.WAITLISTED.bit;
+            }
+
+            updateVacancyStatus();
+            return bookingTicket;
+        } finally {
+            unlock();
+        }
+    }
+
+    // Confirms a ticket and assigns it a seat, preferring the ticket's cabin
+    void addConfirmedTicket(Ticket ticket) {
+        ticket.setStatus(Ticket.Status.CONFIRMED);
+        addToConfirmedList(ticket);
+        inventory.add(slot, FlightInventory.CONFIRMED, 1);
+        inventory.add(slot, FlightInventory.EMPTY, -1);
+        assignSeat(ticket);
+    }
+
+    // Appends a ticket to the confirmed list without touching its status, seat or the counters
+    void addToConfirmedList(Ticket ticket) {
+        if (confirmedTicketList == Manifest.EMPTY) {
+            confirmedTicketList = new Manifest();
+        }
+        confirmedTicketList.add(ticket);
+        viewStale = true;
+    }
+
+    // Gives a confirmed ticket a seat if it does not have one yet
+    void assignSeat(Ticket ticket) {
+        if (ticket.getSeat() < 0) {
+            ticket.setSeat(seatMap.assign(ticket.getCabin()));
+            viewStale = true;
+        }
+    }
 
-        updateVacancyStatus();
-        Main.afs.saveFlightsToCsv(); // Save changes to the CSV file
+    // Frees the seat held by a ticket
+    private void releaseSeat(Ticket ticket) {
+        if (ticket.getSeat() >= 0) {
+            seatMap.release(ticket.getSeat());
+            ticket.setSeat(-1);
+        }
     }
 
-    // Adds a passenger to the confirmed list
-    public void addConfirmedPassenger(Passenger passenger) {
-        confirmedTicketList.add(passenger);
-        confirmedSeats++;
-        emptySeats--;
+    // Puts a ticket on the waiting list, behind the tickets that the waitlist policy promotes first
+    void addWaitlistedTicket(Ticket ticket) {
+        ticket.setStatus(Ticket.Status.WAITING_LIST);
+        if (waitingList == Waitlist.EMPTY) {
+            waitingList = new Waitlist();
+        }
+        waitingList.add(ticket);
+        inventory.add(slot, FlightInventory.WAITLIST, 1);
+        viewStale = true;
     }
 
-    // Adds a passenger to the waiting list
-    public void addWaitlistedPassenger(Passenger passenger) {
-        waitingList.add(passenger);
+    // Takes a ticket off the waiting list; returns false if it is not on it
+    private boolean removeWaitlistedTicket(Ticket ticket) {
+        if (!waitingList.remove(ticket)) {
+            return false;
+        }
+        inventory.add(slot, FlightInventory.WAITLIST, -1);
+        viewStale = true;
+        return true;
     }
 
     // Processes the waiting list and confirms passengers if seats are available
     public void processWaitlist() {
-        while (!isFull() && !waitingList.isEmpty()) {
-            Passenger nextPassenger = waitingList.poll();
-            addConfirmedPassenger(nextPassenger);
+        lock.lock();
+        try {
+            boolean promoted = false;
+            while (!isFull() && !waitingList.isEmpty()) {
+                addConfirmedTicket(pollWaitlist());
+                promoted = true;
+            }
+            updateVacancyStatus();
+            if (promoted) {
+                seatsChanged();
+            }
+        } finally {
+            unlock();
+        }
+    }
+
+    // Reserves a seat in the preferred cabin until ttlMillis from now; returns null if the flight is full.
+    // The hold is journaled and its expiry scheduled on the scheduler's timing wheel. Returns once the hold is
+    // durable; throws CompletionException if its journal record could not be written or synced.
+    public SeatHold holdSeat(SeatMap.Cabin cabin, long ttlMillis) {
+        SeatHold hold;
+        CompletableFuture<Long> durable;
+        lock.lock();
+        try {
+            if (detached || isFull()) {
+                return null;
+            }
+            hold = new SeatHold(Main.afs.nextHoldId(), this, cabin, System.currentTimeMillis() + ttlMillis);
+            addHold(hold, -1);
+            durable = Main.afs.recordHold(hold); // Append the hold to the journal and start its timer
+        } finally {
+            unlock();
+        }
+        durable.join(); // Synced outside the lock
+        return hold;
+    }
+
+    // Turns a hold into a confirmed ticket on the held seat; returns null if the hold is no longer held, the passenger
+    // is already on this flight or holds too many tickets. A refused hold stays in place until it is released or expires.
+    // Returns once the booking is durable; throws CompletionException if its journal record could not be written or synced.
+    public Ticket confirmHold(SeatHold hold, Passenger passenger) {
+        long start = Metrics.ENABLED ? System.nanoTime() : 0;
+        Ticket ticket;
+        CompletableFuture<Long> durable = null;
+        lock.lock();
+        try {
+            ticket = placeHeldPassenger(hold, passenger);
+            if (ticket != null) {
+                durable = Main.afs.recordHoldConfirmed(hold, passenger); // Append the booking to the journal and stop the timer
+            }
+        } finally {
+            unlock();
+        }
+        if (durable != null) {
+            durable.join(); // Synced outside the lock
+        }
+        if (Metrics.ENABLED) {
+            Metrics.BOOK.record(System.nanoTime() - start);
+            if (ticket != null) {
+                Metrics.BOOKINGS_CONFIRMED.increment();
+            }
+        }
+        return ticket;
+    }
+
+    // Gives up a hold before its deadline; returns false if it is no longer held. Returns once the release is
+    // durable; throws CompletionException if its journal record could not be written or synced.
+    public boolean releaseHold(SeatHold hold) {
+        CompletableFuture<Long> durable;
+        lock.lock();
+        try {
+            if (!removeHold(hold, SeatHold.Status.RELEASED)) {
+                return false;
+            }
+            durable = Main.afs.recordHoldReleased(hold); // Append the release to the journal and stop the timer
+        } finally {
+            unlock();
+        }
+        durable.join(); // Synced outside the lock
+        return true;
+    }
+
+    // Counts a hold against the flight and reserves its seat, or a seat in its cabin when seat is -1; no journaling
+    void addHold(SeatHold hold, int seat) {
+        lock.lock();
+        try {
+            if (seat < 0 || !seatMap.occupy(seat)) {
+                seat = seatMap.assign(hold.cabin);
+            }
+            hold.seat = seat;
+            heldSeats++;
+            inventory.add(slot, FlightInventory.EMPTY, -1);
+            updateVacancyStatus();
+            seatsChanged();
+            pendingChanges |= FlightEvent.Change.HELD.bit;
+        } finally {
+            unlock();
+        }
+    }
+
+    // Adds a new ticket to its passenger's bucket; returns false if the passenger holds too many tickets or is already
+    // on this flight. A passenger an eviction dropped from the index after the caller looked it up hands the ticket to
+    // the indexed passenger with its passport, so that no booking goes to a passenger lookups cannot find.
+    private boolean addToPassenger(Ticket ticket) {
+        while (!ticket.getPassenger().addTicketToBucket(ticket)) {
+            Passenger dropped = ticket.getPassenger();
+            if (!dropped.isDropped()) {
+                return false;
+            }
+            Passenger indexed = Main.afs.registerLoadedPassenger(dropped.getPassportNum(), dropped.getName());
+            if (indexed.findTicket(this) != null) {
+                return false;
+            }
+            ticket.setPassenger(indexed);
+        }
+        return true;
+    }
+
+    // Confirms a passenger on a held seat without journaling; returns the ticket, or null as confirmHold does
+    Ticket placeHeldPassenger(SeatHold hold, Passenger passenger) {
+        lock.lock();
+        try {
+            if (hold.flight != this || hold.status != SeatHold.Status.HELD || passenger.findTicket(this) != null) {
+                return null;
+            }
+            Ticket ticket = new Ticket(passenger, this, hold.cabin);
+            if (!addToPassenger(ticket)) {
+                return null;
+            }
+            hold.status = SeatHold.Status.CONFIRMED;
+            heldSeats--;
+            ticket.setStatus(Ticket.Status.CONFIRMED);
+            ticket.setSeat(hold.seat);
+            addToConfirmedList(ticket);
+            assignSeat(ticket); // Only needed if the seat map was full when the seat was held
+            inventory.add(slot, FlightInventory.CONFIRMED, 1); // The seat already left the empty count with the hold
+            seatsChanged();
+            pendingChanges |= FlightEvent.Change.BOOKED.bit | FlightEvent.Change.HOLD_ENDED.bit;
+            return ticket;
+        } finally {
+            unlock();
+        }
+    }
+
+    // Ends a hold without journaling and frees its seat, which goes to the head of the waiting list;
+    // returns false if the hold is not held on this flight
+    boolean removeHold(SeatHold hold, SeatHold.Status status) {
+        lock.lock();
+        try {
+            if (hold.flight != this || hold.status != SeatHold.Status.HELD) {
+                return false;
+            }
+            hold.status = status;
+            heldSeats--;
+            if (hold.seat >= 0) {
+                seatMap.release(hold.seat);
+            }
+            inventory.add(slot, FlightInventory.EMPTY, 1);
+            seatsChanged();
+            pendingChanges |= FlightEvent.Change.HOLD_ENDED.bit;
+            processWaitlist();
+            return true;
+        } finally {
+            unlock();
         }
     }
 
     // Cancels a ticket for a passenger
     public boolean cancelTicket(Passenger passenger){
-        if(confirmedTicketList.remove(passenger)){
-            confirmedSeats--;
-            emptySeats++;
+        long start = Metrics.ENABLED ? System.nanoTime() : 0;
+        Passenger nextPassenger = null;
+        boolean canceled;
+        CompletableFuture<Long> durable = null;
+        lock.lock();
+        try {
+            Ticket ticket = passenger.findTicket(this);
+            if (ticket != null && ticket.getStatus() == Ticket.Status.CONFIRMED && !waitingList.isEmpty()) {
+                nextPassenger = waitingList.peek().getPassenger(); // Takes the freed seat
+            }
+            canceled = removePassenger(passenger);
+            if(canceled){
+                durable = Main.afs.recordCancellation(this, passenger); // Append the cancellation to the journal
+            }
+        } finally {
+            unlock();
+        }
+        boolean journaled = durable == null || AnnualFlightScheduler.awaitDurable(durable);
+        if (Metrics.ENABLED) {
+            Metrics.CANCEL.record(System.nanoTime() - start);
+            if (canceled) {
+                Metrics.CANCELLATIONS.increment();
+            }
+        }
+
+        if(canceled){
             System.out.println("Ticket canceled for passenger: " + passenger.getName());
-            
-            // Move a passenger from the waiting list to the confirmed list if available
-            if(!waitingList.isEmpty()){
-                Passenger nextPassenger = waitingList.poll();
-                addConfirmedPassenger(nextPassenger);
+            if(nextPassenger != null){
                 System.out.println("Passenger " + nextPassenger.getName() + " moved from waiting list to confirmed.");
-            }   
-            updateVacancyStatus();
-            updateTicketStatuses();
-            
+            }
+            if (!journaled) {
+                System.err.println("Warning: the cancellation could not be saved to the journal and will be lost on restart.");
+            }
+            Main.afs.checkpointIfNeeded();
             return true;     
         }else{
-            System.out.println("Passenger not found in the confirmed list.");
+            System.out.println("Passenger not found on this flight.");
             return false;
         }
     }
-        
-    // Updates the statuses of tickets associated with this flight
-    public void updateTicketStatuses() {
-        for (Passenger p : confirmedTicketList) {
-            for (Ticket t : p.getTickets()) {
-                if (t.getFlight().equals(this)) {
-                    t.setStatus("confirmed");
-                }
+
+    // Removes a confirmed or waitlisted passenger without printing, marks their ticket canceled and takes it out of
+    // their bucket; a freed seat goes to the head of the waiting list
+    boolean removePassenger(Passenger passenger){
+        lock.lock();
+        try {
+            Ticket ticket = detached ? null : passenger.findTicket(this);
+            if (ticket != null && ticket.getStatus() == Ticket.Status.WAITING_LIST && removeWaitlistedTicket(ticket)) {
+                ticket.setStatus(Ticket.Status.CANCELED);
+                passenger.removeTicket(ticket);
+                pendingChanges |= FlightEvent.Change.CANCELED.bit;
+                return true;
             }
-        }
+            if(ticket == null || ticket.getStatus() != Ticket.Status.CONFIRMED || !confirmedTicketList.remove(ticket)){
+                return false;
+            }
+            releaseSeat(ticket);
+            ticket.setStatus(Ticket.Status.CANCELED);
+            passenger.removeTicket(ticket);
+            pendingChanges |= FlightEvent.Change.CANCELED.bit;
+            inventory.add(slot, FlightInventory.CONFIRMED, -1);
+            inventory.add(slot, FlightInventory.EMPTY, 1);
 
-        for (Passenger p : waitingList) {
-            for (Ticket t : p.getTickets()) {
-                if (t.getFlight().equals(this)) {
-                    t.setStatus("waiting list");
-                }
+            // Move a passenger from the waiting list to the confirmed list if available
+            if(!waitingList.isEmpty()){
+                addConfirmedTicket(pollWaitlist());
             }
+            updateVacancyStatus();
+            seatsChanged();
+            return true;
+        } finally {
+            unlock();
+        }
+    }
+
+    // Notes that the seat counts changed; the cached availability of this flight's date is dropped once the change is
+    // published, so that a search rendered from the old view is never cached after the invalidation
+    private void seatsChanged() {
+        seatCountsChanged = true;
+        viewStale = true;
+    }
+
+    // Removes and returns the ticket at the head of the waiting list
+    private Ticket pollWaitlist() {
+        if (Metrics.ENABLED) {
+            Metrics.PROMOTIONS.increment();
         }
+        Ticket ticket = waitingList.peek();
+        removeWaitlistedTicket(ticket);
+        pendingChanges |= FlightEvent.Change.PROMOTED.bit;
+        return ticket;
     }
-    
+
+    // Releases the lock. The outermost release publishes the changes made under the lock as one new view, so readers
+    // see a booking, a cancellation or a batch either completely or not at all.
+    void unlock() {
+        if (viewStale && lock.getHoldCount() == 1) {
+            publishView();
+        }
+        lock.unlock();
+    }
+
+    // Commits the flight's current state as its next view; the caller holds the lock
+    private void publishView() {
+        FlightView current = view;
+        FlightView next = new FlightView(this);
+        ReadView.commit(this, next);
+        viewStale = false;
+        if (pendingChanges != 0 && AnnualFlightScheduler.events.isActive()) {
+            AnnualFlightScheduler.events.publish(new FlightEvent(current, next, pendingChanges));
+        }
+        pendingChanges = 0;
+        if (seatCountsChanged) {
+            seatCountsChanged = false;
+            AnnualFlightScheduler.availabilityCache.invalidate(date);
+        }
+    }
+
+    // Replaces the flight's views with one of its loaded state, visible to every reader; the caller must keep the
+    // flight unreachable until this returns
+    void publishLoadedView() {
+        FlightView loaded = new FlightView(this);
+        loaded.version = 0;
+        view = loaded;
+        viewStale = false;
+        seatCountsChanged = false;
+        pendingChanges = 0; // Loading a flight is not a change to announce
+    }
+
     // Sets the number of confirmed seats (with validation)
     public void setConfirmedSeats(int confirmedSeats) {
+        int maxSeats = getCapacity();
         if (confirmedSeats < 0 || confirmedSeats > maxSeats) {
             System.err.println("Invalid confirmed seats value. Adjusting to default.");
             confirmedSeats = Math.max(0, Math.min(confirmedSeats, maxSeats));
         }
-        this.confirmedSeats = confirmedSeats;
-        this.emptySeats = maxSeats - confirmedSeats; 
+        inventory.set(slot, FlightInventory.CONFIRMED, confirmedSeats);
+        inventory.set(slot, FlightInventory.EMPTY, maxSeats - confirmedSeats);
+        seatsChanged();
     }
 
     // Sets the number of empty seats (with validation)
     public void setEmptySeats(int emptySeats) {
+        int maxSeats = getCapacity();
         if (emptySeats < 0 || emptySeats > maxSeats) {
             throw new IllegalArgumentException("Invalid empty seats value.");
         }
-        this.emptySeats = emptySeats;
-        this.confirmedSeats = maxSeats - emptySeats; 
+        inventory.set(slot, FlightInventory.EMPTY, emptySeats);
+        inventory.set(slot, FlightInventory.CONFIRMED, maxSeats - emptySeats);
+        seatsChanged();
     }
 
+    public int getCapacity() {
+        return counter(FlightInventory.CAPACITY);
+    }
 
     public int getConfirmedSeats() {
-        return confirmedSeats;
+        return counter(FlightInventory.CONFIRMED);
     }
 
     public int getEmptySeats() {
-        return emptySeats;
+        return counter(FlightInventory.EMPTY);
+    }
+
+    // Reads a counter without the lock. Loading or evicting a partition moves flights to another inventory and
+    // clears or reuses the slots they leave, so the value only counts if the slot belonged to this flight both before
+    // and after it was read; the loop repeats during a move.
+    private int counter(int column) {
+        while (true) {
+            FlightInventory current = inventory;
+            int at = slot;
+            if (current.flightAt(at) == this) {
+                int value = current.get(at, column);
+                if (current.flightAt(at) == this) {
+                    return value;
+                }
+            }
+        }
+    }
+
+    // Returns the number of unassigned seats in a cabin
+    public int getAvailableSeats(SeatMap.Cabin cabin) {
+        return seatMap.getFreeSeats(cabin);
     }
 
     public int getWaitlistCount() {
-        return waitingList.size();
+        return counter(FlightInventory.WAITLIST);
+    }
+
+    // Returns the 1-based place of a ticket on this flight's waiting list, or 0 if it is not waitlisted
+    public int getWaitlistPosition(Ticket ticket) {
+        lock.lock();
+        try {
+            return waitingList.position(ticket);
+        } finally {
+            unlock();
+        }
+    }
+
+    // Reads a ticket's status, seat and place on the waiting list together under the lock, so a promotion or
+    // cancellation running meanwhile is seen entirely or not at all. The place comes from the waiting list's heap
+    // in O(log n), where a published copy of the list would have to be scanned.
+    TicketState getTicketState(Ticket ticket) {
+        lock.lock();
+        try {
+            Ticket.Status status = ticket.getStatus();
+            return new TicketState(status,
+                    status == Ticket.Status.CONFIRMED ? ticket.getSeat() : -1,
+                    status == Ticket.Status.WAITING_LIST ? waitingList.position(ticket) : 0);
+        } finally {
+            unlock();
+        }
+    }
+
+    // A ticket's status, seat and waiting list place as of one moment
+    static final class TicketState {
+        final Ticket.Status status; // Null for a ticket whose booking has not completed
+        final int seat; // Seat number, or -1
+        final int waitlistPosition; // 1-based place on the waiting list, or 0
+
+        TicketState(Ticket.Status status, int seat, int waitlistPosition) {
+            this.status = status;
+            this.seat = seat;
+            this.waitlistPosition = waitlistPosition;
+        }
+    }
+
+    public LocalDate getDate() {
+        return date;
     }
 
+    // Describes the last published state, which is never halfway through a change
     @Override
     public String toString() {
-        return "Flight ID: " + this.flightID +
-                " Total seat available: " + this.maxSeats +
-                " Seat booked: " + confirmedSeats +
-                " Seat available: " + emptySeats +
-                " Vacancy Status: " + vacancyStatus;
+        return view.toString();
     }
 }
\ No newline at end of file
@@ -0,0 +1,284 @@
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Supplier;
+
+// Micro-benchmarks for the booking, cancellation, lookup, search and persistence paths.
+// Usage: java FlightBenchmark [flightsPerDay=3] [days=365] [seats=180] [waitlist=100] [passengers=10000] [rounds=5]
+// Add -Dflight.metrics=true to the JVM options to measure with metrics on and print them at the end.
+public class FlightBenchmark {
+    static final LocalDate START_DATE = LocalDate.of(2025, 1, 1); // First day of the generated schedule
+    static int flightsPerDay = 3; // Flights generated per day
+    static int days = 365; // Length of the generated schedule in days
+    static int seats = 180; // Capacity of every generated flight
+    static int waitlist = 100; // Waitlist depth used by the cancellation benchmark
+    static int passengers = 10000; // Passengers booked or looked up per round
+    static int rounds = 5; // Measured rounds per benchmark, after as many warm-up rounds
+
+    private static final PrintStream console = System.out;
+    private static final PrintStream muted = new PrintStream(OutputStream.nullOutputStream());
+    private static int passengerCounter; // Keeps generated passport numbers unique across rounds
+    private static final int MIN_SCALING_THREADS = 4; // Largest pool the availability queries run in, unless there are more cores
+    private static volatile long sink; // Results of measured calls that return one, so the JIT cannot drop the calls
+
+    public static void main(String[] args) throws IOException {
+        for (String arg : args) {
+            String[] kv = arg.split("=");
+            int value = Integer.parseInt(kv[1]);
+            switch (kv[0]) {
+                case "flightsPerDay": flightsPerDay = value; break;
+                case "days": days = value; break;
+                case "seats": seats = value; break;
+                case "waitlist": waitlist = value; break;
+                case "passengers": passengers = value; break;
+                case "rounds": rounds = value; break;
+                default: throw new IllegalArgumentException("Unknown parameter: " + kv[0]);
+            }
+        }
+
+        Path dir = Files.createTempDirectory("flight-benchmark");
+        String csvFileName = dir.resolve("flights.csv").toString();
+        String journalFileName = dir.resolve("flights.journal").toString();
+        GenerateFlightsCsv.generate(csvFileName, START_DATE, START_DATE.plusDays(days - 1), flightsPerDay, seats);
+
+        console.println("flightsPerDay=" + flightsPerDay + " days=" + days + " seats=" + seats
+                + " waitlist=" + waitlist + " passengers=" + passengers + " flights=" + (long) flightsPerDay * days);
+        System.setOut(muted); // Booking and search print to the console; keep that out of the numbers
+        Main.afs = new AnnualFlightScheduler(csvFileName, journalFileName);
+
+        measure("bookFlight", passengers, () -> {
+            Flight flight = newFlight();
+            Passenger[] batch = newPassengers(passengers);
+            return () -> {
+                for (Passenger p : batch) {
+                    flight.bookFlight(p, flight);
+                }
+            };
+        });
+
+        int cancels = Math.min(seats, waitlist);
+        measure("cancelTicket+promotion", cancels, () -> {
+            Flight flight = newFlight();
+            Passenger[] confirmed = newPassengers(seats);
+            for (Passenger p : confirmed) {
+                flight.placePassenger(p, SeatMap.Cabin.ECONOMY);
+            }
+            for (Passenger p : newPassengers(waitlist)) {
+                flight.placePassenger(p, SeatMap.Cabin.ECONOMY);
+            }
+            return () -> {
+                for (int i = 0; i < cancels; i++) {
+                    flight.cancelTicket(confirmed[i]);
+                }
+            };
+        });
+
+        measure("getPassengerInfo", passengers, () -> {
+            String[] passports = new String[passengers];
+            for (int i = 0; i < passengers; i++) {
+                passports[i] = Main.afs.registerPassenger("B" + passengerCounter++, "Bench").getPassportNum();
+            }
+            return () -> {
+                for (String passport : passports) {
+                    if (Main.afs.getPassengerInfo(passport) == null) {
+                        throw new IllegalStateException("Missing passenger " + passport);
+                    }
+                }
+            };
+        });
+
+        measure("processFlightID", passengers, () -> {
+            String[] flightIDs = new String[passengers];
+            for (int i = 0; i < passengers; i++) {
+                flightIDs[i] = "Flight-" + (i % flightsPerDay) + "-" + START_DATE.plusDays(i % days);
+            }
+            return () -> {
+                for (String flightID : flightIDs) {
+                    if (AnnualFlightScheduler.processFlightID(flightID) == null) {
+                        throw new IllegalStateException("Missing flight " + flightID);
+                    }
+                }
+            };
+        });
+
+        measureSearch("searchFlights(week)", 7, false);
+        measureSearch("searchFlights(month)", 30, false);
+        measureSearch("searchFlights(year)", 365, false);
+        measureSearch("searchFlights(week,cached)", 7, true);
+        measureSearch("searchFlights(month,cached)", 30, true);
+        measureSearch("searchFlights(year,cached)", 365, true);
+        console.println(AnnualFlightScheduler.availabilityCache);
+
+        // Free seats over the whole schedule, once through the Flight objects and once over the inventory columns
+        LocalDate endDate = START_DATE.plusDays(days - 1);
+        measure("freeSeats(flights)", 1, () -> () ->
+                sink += AnnualFlightScheduler.findFlights(START_DATE, endDate).mapToLong(Flight::getEmptySeats).sum());
+        measure("freeSeats(inventory)", 1, () -> () -> {
+            FlightInventory inventory = AnnualFlightScheduler.inventory;
+            sink += inventory.sum(FlightInventory.EMPTY, inventory.firstSlot(START_DATE), inventory.endSlot(endDate));
+        });
+
+        // Availability queries over the whole schedule, run in pools of growing size to show how they scale. The pools
+        // grow to at least MIN_SCALING_THREADS, so a machine with fewer cores still shows what the extra threads cost.
+        LocalDate queryEnd = START_DATE.plusDays(days - 1);
+        Map<String, Callable<Long>> queries = new LinkedHashMap<>();
+        queries.put("firstWithFreeSeats", () -> AvailabilityQuery.firstWithFreeSeats(START_DATE, seats + 1) == null
+                ? 0L : 1L); // No match, so the whole schedule is scanned
+        queries.put("weeklyLoad", () -> (long) AvailabilityQuery.weeklyLoad(START_DATE, queryEnd).size());
+        queries.put("waitlistedOver", () -> (long) AvailabilityQuery.waitlistedOver(START_DATE, queryEnd, 0).size());
+        queries.put("mostOversubscribed", () -> (long) AvailabilityQuery.mostOversubscribed(START_DATE, queryEnd, 10).size());
+        int cores = Runtime.getRuntime().availableProcessors();
+        int maxParallelism = Math.max(cores, MIN_SCALING_THREADS);
+        List<Integer> parallelisms = new ArrayList<>();
+        for (int parallelism = 1; parallelism < maxParallelism; parallelism *= 2) {
+            parallelisms.add(parallelism);
+        }
+        parallelisms.add(maxParallelism);
+
+        double[][] nanosPerQuery = new double[queries.size()][parallelisms.size()];
+        for (int i = 0; i < parallelisms.size(); i++) {
+            ForkJoinPool pool = new ForkJoinPool(parallelisms.get(i));
+            int q = 0;
+            for (Map.Entry<String, Callable<Long>> query : queries.entrySet()) {
+                nanosPerQuery[q++][i] = measure(query.getKey() + "(p=" + parallelisms.get(i) + ")", 1,
+                        () -> () -> sink += pool.submit(query.getValue()).join());
+            }
+            pool.shutdown();
+        }
+        console.println("speedup over p=1 in the best round, with " + cores + " cores available:");
+        int q = 0;
+        for (String name : queries.keySet()) {
+            StringBuilder line = new StringBuilder(String.format("%-26s", name));
+            for (int i = 0; i < parallelisms.size(); i++) {
+                line.append(String.format(" p=%d %.2fx", parallelisms.get(i), nanosPerQuery[q][0] / nanosPerQuery[q][i]));
+            }
+            console.println(line);
+            q++;
+        }
+
+        // The benchmark flights are not part of the schedule, so fold their journal records away before reloading
+        measure("loadFlightsFromCsv", 1, () -> {
+            Main.afs.checkpoint();
+            return () -> Main.afs = new AnnualFlightScheduler(csvFileName, journalFileName);
+        });
+        measure("saveFlightsToCsv", 1, () -> () -> Main.afs.checkpoint());
+
+        String binaryFileName = dir.resolve("flights.bin").toString();
+        String binaryJournalFileName = dir.resolve("flights-bin.journal").toString();
+        measure("saveBinarySnapshot", 1, () -> () -> Main.afs.exportSnapshot(binaryFileName,
+                AnnualFlightScheduler.SnapshotFormat.BINARY));
+        measure("loadBinarySnapshot", 1, () -> () -> Main.afs = new AnnualFlightScheduler(binaryFileName,
+                binaryJournalFileName, AnnualFlightScheduler.SnapshotFormat.BINARY));
+        console.println("snapshot size: csv=" + Files.size(dir.resolve("flights.csv"))
+                + " bytes, binary=" + Files.size(dir.resolve("flights.bin")) + " bytes");
+
+        // Runs last because it fills the scheduled flights that the persistence benchmarks above read
+        measure("applyBatch(book)", passengers, () -> {
+            List<BatchOperation> batch = new ArrayList<>(passengers);
+            for (int i = 0; i < passengers; i++) {
+                String flightID = "Flight-" + (i % flightsPerDay) + "-" + START_DATE.plusDays(i % days);
+                batch.add(BatchOperation.book(flightID, "B" + passengerCounter++, "Bench", SeatMap.Cabin.ECONOMY));
+            }
+            return () -> Main.afs.applyBatch(batch);
+        });
+
+        // One booking per call, as a server handles requests: a sync per call, then a shared journal writer
+        int singles = Math.min(passengers, 1000);
+        measure("applyBatch(single)", singles, () -> {
+            List<List<BatchOperation>> calls = newSingleBookings(singles);
+            return () -> {
+                for (List<BatchOperation> call : calls) {
+                    Main.afs.applyBatch(call);
+                }
+            };
+        });
+
+        measure("applyBatchAsync(single)", passengers, () -> {
+            List<List<BatchOperation>> calls = newSingleBookings(passengers);
+            return () -> {
+                List<CompletableFuture<List<BatchOperation.Result>>> results = new ArrayList<>(calls.size());
+                for (List<BatchOperation> call : calls) {
+                    results.add(Main.afs.applyBatchAsync(call));
+                }
+                results.forEach(CompletableFuture::join); // The round ends once every booking is durable
+            };
+        });
+
+        if (Metrics.ENABLED) {
+            console.print(Metrics.report());
+        }
+        System.setOut(console);
+    }
+
+    // Times searches over a range of the given length, starting at a different day each call;
+    // uncached searches pass a filter, which bypasses the availability cache
+    private static void measureSearch(String name, int rangeDays, boolean cached) {
+        int calls = 20;
+        measure(name, calls, () -> () -> {
+            for (int i = 0; i < calls; i++) {
+                LocalDate from = START_DATE.plusDays((long) i * 7 % Math.max(1, days - rangeDays));
+                if (cached) {
+                    AnnualFlightScheduler.searchFlights(from, from.plusDays(rangeDays - 1));
+                } else {
+                    AnnualFlightScheduler.searchFlights(from, from.plusDays(rangeDays - 1), flight -> true);
+                }
+            }
+        });
+    }
+
+    // Runs warm-up and measured rounds and returns the best round's time per operation in nanoseconds, which is less
+    // noisy than the mean for comparisons; setup is untimed and returns the timed part of a round
+    private static double measure(String name, int opsPerRound, Supplier<Runnable> setup) {
+        for (int i = 0; i < rounds; i++) {
+            setup.get().run();
+        }
+
+        long totalNanos = 0;
+        long best = Long.MAX_VALUE;
+        for (int i = 0; i < rounds; i++) {
+            Runnable round = setup.get();
+            long start = System.nanoTime();
+            round.run();
+            long elapsed = System.nanoTime() - start;
+            totalNanos += elapsed;
+            best = Math.min(best, elapsed);
+        }
+
+        double meanPerOp = (double) totalNanos / rounds / opsPerRound;
+        console.printf("%-26s %14.1f ns/op (best %.1f) %14.0f ops/s%n",
+                name, meanPerOp, (double) best / opsPerRound, 1e9 / meanPerOp);
+        return (double) best / opsPerRound;
+    }
+
+    private static Flight newFlight() {
+        return new Flight("Flight-999-" + START_DATE, START_DATE, seats - seats / 10, seats / 10);
+    }
+
+    private static Passenger[] newPassengers(int count) {
+        Passenger[] batch = new Passenger[count];
+        for (int i = 0; i < count; i++) {
+            batch[i] = new Passenger("B" + passengerCounter++, "Bench");
+        }
+        return batch;
+    }
+
+    // Returns single-booking batches spread over the scheduled flights
+    private static List<List<BatchOperation>> newSingleBookings(int count) {
+        List<List<BatchOperation>> calls = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            String flightID = "Flight-" + (i % flightsPerDay) + "-" + START_DATE.plusDays(i % days);
+            calls.add(List.of(BatchOperation.book(flightID, "B" + passengerCounter++, "Bench", SeatMap.Cabin.ECONOMY)));
+        }
+        return calls;
+    }
+}
@@ -0,0 +1,106 @@
+import java.time.LocalDate;
+
+// A change to one flight's seat inventory, as published on the scheduler's event stream (see FlightEventStream).
+// One event covers everything done under one hold of the flight's lock, so a cancellation that promotes the head
+// of the waiting list is a single event that includes both CANCELED and PROMOTED, with the net deltas.
+public class FlightEvent {
+    // What happened to the flight; an event carries one or more of these
+    public enum Change {
+        BOOKED, WAITLISTED, CANCELED, PROMOTED, HELD, HOLD_ENDED;
+
+        final int bit = 1 << ordinal();
+    }
+
+    private final String flightID;
+    private final LocalDate date;
+    private final long version; // Version of the flight's read view after the change (see ReadView)
+    private final int changes; // Bit set of Change
+    private final int confirmedDelta; // Change in confirmed seats
+    private final int emptyDelta; // Change in empty seats; a hold takes a seat out of the empty count
+    private final int waitlistDelta; // Change in the length of the waiting list
+    private final int capacity;
+    private final int confirmedSeats; // Counts after the change
+    private final int emptySeats;
+    private final int waitlistCount;
+    long sequence; // Position in the stream; set when the event is published
+
+    // Describes the change from one view of a flight to the next
+    FlightEvent(FlightView before, FlightView after, int changes) {
+        this.flightID = after.getFlightID();
+        this.date = after.getDate();
+        this.version = after.version;
+        this.changes = changes;
+        this.confirmedDelta = after.getConfirmedSeats() - before.getConfirmedSeats();
+        this.emptyDelta = after.getEmptySeats() - before.getEmptySeats();
+        this.waitlistDelta = after.getWaitlistCount() - before.getWaitlistCount();
+        this.capacity = after.getCapacity();
+        this.confirmedSeats = after.getConfirmedSeats();
+        this.emptySeats = after.getEmptySeats();
+        this.waitlistCount = after.getWaitlistCount();
+    }
+
+    public String getFlightID() {
+        return flightID;
+    }
+
+    public LocalDate getDate() {
+        return date;
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    public long getSequence() {
+        return sequence;
+    }
+
+    public boolean includes(Change change) {
+        return (changes & change.bit) != 0;
+    }
+
+    public int getConfirmedDelta() {
+        return confirmedDelta;
+    }
+
+    public int getEmptyDelta() {
+        return emptyDelta;
+    }
+
+    public int getWaitlistDelta() {
+        return waitlistDelta;
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    public int getConfirmedSeats() {
+        return confirmedSeats;
+    }
+
+    public int getEmptySeats() {
+        return emptySeats;
+    }
+
+    public int getHeldSeats() {
+        return capacity - confirmedSeats - emptySeats;
+    }
+
+    public int getWaitlistCount() {
+        return waitlistCount;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder("#").append(sequence).append(' ').append(flightID);
+        for (Change change : Change.values()) {
+            if (includes(change)) {
+                sb.append(' ').append(change);
+            }
+        }
+        return sb.append(" confirmed ").append(confirmedSeats).append(" (").append(confirmedDelta)
+                .append(") empty ").append(emptySeats).append(" (").append(emptyDelta)
+                .append(") waitlisted ").append(waitlistCount).append(" (").append(waitlistDelta).append(")").toString();
+    }
+}
@@ -0,0 +1,192 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+
+// In-process stream of FlightEvents for pricing, dashboards and cache warmers.
+//
+// Events go into a bounded ring buffer: a publisher claims the next sequence number and stores the event in its
+// slot, which costs one atomic increment and one compare-and-set and never waits, so publishing under a flight's
+// lock adds nothing a subscriber could stretch. Each subscriber has a thread of its own that follows the ring and
+// hands it the events in batches of up to maxBatch, as many as have piled up since the last batch.
+//
+// Backpressure is explicit and never reaches the publishers: the ring is not held back for slow subscribers.
+// A subscriber that falls a whole ring behind loses the events that were overwritten, is told how many with
+// onOverflow, and carries on from the oldest event still in the ring. getLag shows how close a subscriber is to
+// that. A subscriber that must not miss a change resynchronizes from a ReadView on overflow; event versions say
+// which changes that view already contains.
+public class FlightEventStream {
+    static final int DEFAULT_CAPACITY = Integer.getInteger("flight.events.capacity", 1 << 16); // Events kept in the ring
+    private static final int SPINS = 100; // Empty polls before an idle subscriber starts parking
+    private static final long MAX_PARK_NANOS = 1_000_000; // Longest an idle subscriber sleeps, bounding delivery delay
+
+    // Receives the events of a subscription, on the subscription's thread
+    public interface Subscriber {
+        // Called with the next events in stream order; the list is reused once this returns
+        void onEvents(List<FlightEvent> events);
+
+        // Called when missed events were overwritten before this subscriber reached them
+        default void onOverflow(long missed) {
+        }
+    }
+
+    private final AtomicReferenceArray<FlightEvent> ring;
+    private final int mask;
+    private final AtomicLong nextSequence = new AtomicLong(); // Sequence the next published event gets
+    private final Set<Subscription> subscriptions = ConcurrentHashMap.newKeySet();
+    private volatile boolean active; // Whether there are subscriptions; events are not even built without any
+
+    public FlightEventStream(int capacity) {
+        if (capacity < 2 || Integer.bitCount(capacity) != 1) {
+            throw new IllegalArgumentException("Event ring capacity must be a power of two: " + capacity);
+        }
+        ring = new AtomicReferenceArray<>(capacity);
+        mask = capacity - 1;
+    }
+
+    public boolean isActive() {
+        return active;
+    }
+
+    public int getCapacity() {
+        return mask + 1;
+    }
+
+    // Adds an event to the ring; never blocks
+    void publish(FlightEvent event) {
+        long sequence = nextSequence.getAndIncrement();
+        event.sequence = sequence;
+        int index = (int) sequence & mask;
+        while (true) {
+            FlightEvent stored = ring.get(index);
+            if (stored != null && stored.sequence > sequence) {
+                return; // The ring wrapped around before this event was stored; a later one owns the slot
+            }
+            if (ring.compareAndSet(index, stored, event)) {
+                return;
+            }
+        }
+    }
+
+    // Starts delivering the events published from now on to a subscriber, on a daemon thread of its own
+    public Subscription subscribe(String name, int maxBatch, Subscriber subscriber) {
+        if (maxBatch < 1) {
+            throw new IllegalArgumentException("maxBatch must be positive: " + maxBatch);
+        }
+        Subscription subscription = new Subscription(name, maxBatch, subscriber, nextSequence.get());
+        synchronized (subscriptions) {
+            subscriptions.add(subscription);
+            active = true;
+        }
+        subscription.thread.start();
+        return subscription;
+    }
+
+    // Returns how far the slowest subscriber is behind, in events
+    public long getMaxLag() {
+        long lag = 0;
+        for (Subscription subscription : subscriptions) {
+            lag = Math.max(lag, subscription.getLag());
+        }
+        return lag;
+    }
+
+    // A subscriber's place in the stream and the thread that delivers to it
+    public class Subscription implements AutoCloseable {
+        private final String name;
+        private final int maxBatch;
+        private final Subscriber subscriber;
+        private final Thread thread;
+        private volatile long cursor; // Sequence of the next event to deliver
+        private volatile boolean running = true;
+
+        private Subscription(String name, int maxBatch, Subscriber subscriber, long start) {
+            this.name = name;
+            this.maxBatch = maxBatch;
+            this.subscriber = subscriber;
+            this.cursor = start;
+            this.thread = new Thread(this::deliver, "flight-events-" + name);
+            thread.setDaemon(true);
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        // Returns the number of published events not delivered yet
+        public long getLag() {
+            return Math.max(nextSequence.get() - cursor, 0);
+        }
+
+        private void deliver() {
+            List<FlightEvent> batch = new ArrayList<>(Math.min(maxBatch, mask + 1));
+            long next = cursor;
+            int idlePolls = 0;
+            while (running) {
+                long missed = 0;
+                while (batch.size() < maxBatch) {
+                    FlightEvent event = ring.get((int) next & mask);
+                    if (event == null || event.sequence < next) {
+                        break; // Not published yet
+                    }
+                    if (event.sequence > next) {
+                        // Overwritten: skip to the oldest event the publishers cannot have overwritten yet
+                        missed = Math.max(nextSequence.get() - (mask + 1), next + 1) - next;
+                        break;
+                    }
+                    batch.add(event);
+                    next++;
+                }
+
+                if (!batch.isEmpty()) {
+                    try {
+                        subscriber.onEvents(batch);
+                    } catch (RuntimeException e) {
+                        System.err.println("Event subscriber " + name + " failed: " + e);
+                    }
+                    batch.clear();
+                }
+                if (missed > 0) {
+                    next += missed;
+                    if (Metrics.ENABLED) {
+                        Metrics.EVENTS_DROPPED.add(missed);
+                    }
+                    try {
+                        subscriber.onOverflow(missed);
+                    } catch (RuntimeException e) {
+                        System.err.println("Event subscriber " + name + " failed: " + e);
+                    }
+                }
+                if (next != cursor) {
+                    cursor = next;
+                    idlePolls = 0;
+                } else if (++idlePolls <= SPINS) {
+                    Thread.onSpinWait();
+                } else {
+                    LockSupport.parkNanos(Math.min(MAX_PARK_NANOS, 1000L << Math.min(idlePolls - SPINS, 10)));
+                }
+            }
+        }
+
+        // Stops delivery; returns after the subscriber has finished its current batch
+        @Override
+        public void close() {
+            running = false;
+            synchronized (subscriptions) {
+                subscriptions.remove(this);
+                active = !subscriptions.isEmpty();
+            }
+            LockSupport.unpark(thread);
+            if (Thread.currentThread() != thread) {
+                try {
+                    thread.join();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,289 @@
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Primitive, struct-of-arrays store for the per-flight counters. Every flight owns one slot and each counter is a
+// column of ints, so a scan over consecutive slots reads contiguous memory. Columns are split into fixed-size pages
+// that never move, so growing the store cannot lose a write made to an existing slot.
+//
+// The scheduler lays its flights out in date order after loading (see layout), which puts the flights of one day
+// in consecutive slots: slot = dayStart[epochDay - firstDay] + flight number within the day.
+//
+// The partitioned format uses a windowed inventory instead (see windowed): every month on disk owns a fixed range of
+// slots, and loading or evicting a month lays out or clears only that range. Slots a month does not fill hold no
+// flight and zero counters; their pages are not allocated until a month needs them.
+public class FlightInventory {
+    static final int CAPACITY = 0; // Total number of seats
+    static final int CONFIRMED = 1; // Number of confirmed seats
+    static final int EMPTY = 2; // Number of empty seats
+    static final int WAITLIST = 3; // Number of passengers on the waiting list
+    private static final int COLUMNS = 4;
+    static final int PAGE_BITS = 12;
+    static final int PAGE_SIZE = 1 << PAGE_BITS; // Slots per page
+    private static final int PAGE_MASK = PAGE_SIZE - 1;
+    private static final VarHandle INTS = MethodHandles.arrayElementVarHandle(int[].class);
+
+    private volatile int[][][] pages = new int[0][][]; // pages[page][column][slot within page]
+    private volatile Flight[][] flightPages = new Flight[0][]; // Flight view of each slot, paged like the columns
+    private final AtomicInteger size = new AtomicInteger(); // Number of allocated slots
+    private long firstDay; // Epoch day of the first day in the day index
+    private volatile int[] dayStart = {0}; // First slot of each indexed day, plus the end of the last one; copied on change
+    private YearMonth[] windowMonths; // Month of each window, or null if the inventory is not windowed
+    private int[] windowStart; // First slot of each window, plus the end of the last one
+    private int[] windowUsed; // Number of slots each window's loaded flights fill
+    private int scratchStart; // First slot past the windows; flights are allocated here until their month is laid out
+
+    // Builds an empty windowed inventory for the months on disk, in order, where each month has room for at most the
+    // given number of flights
+    static FlightInventory windowed(YearMonth[] months, long[] maxFlights) {
+        FlightInventory inventory = new FlightInventory();
+        inventory.windowMonths = months;
+        inventory.windowStart = new int[months.length + 1];
+        inventory.windowUsed = new int[months.length];
+        long end = 0;
+        for (int i = 0; i < months.length; i++) {
+            inventory.windowStart[i] = (int) end;
+            end += maxFlights[i];
+            if (end > Integer.MAX_VALUE - 2 * PAGE_SIZE) {
+                throw new IllegalArgumentException("Too many flights for one inventory: " + end);
+            }
+        }
+        inventory.windowStart[months.length] = (int) end;
+        inventory.scratchStart = (int) ((end + PAGE_MASK) & ~PAGE_MASK);
+        inventory.size.set(inventory.scratchStart);
+        if (months.length > 0) {
+            inventory.firstDay = months[0].atDay(1).toEpochDay();
+            int[] dayStart = new int[(int) (months[months.length - 1].atEndOfMonth().toEpochDay() - inventory.firstDay) + 2];
+            for (int i = 0; i < months.length; i++) {
+                int day = (int) (months[i].atDay(1).toEpochDay() - inventory.firstDay);
+                int nextDay = i + 1 < months.length ? (int) (months[i + 1].atDay(1).toEpochDay() - inventory.firstDay) : dayStart.length;
+                Arrays.fill(dayStart, day, nextDay, inventory.windowStart[i]); // Every day starts empty
+            }
+            dayStart[dayStart.length - 1] = inventory.windowStart[months.length];
+            inventory.dayStart = dayStart;
+        }
+        return inventory;
+    }
+
+    // Gives a flight a new slot with all counters at zero
+    int allocate(Flight flight) {
+        int slot = size.getAndIncrement();
+        int page = slot >>> PAGE_BITS;
+        if (page >= pages.length || pages[page] == null) {
+            grow(page);
+        }
+        flightPages[page][slot & PAGE_MASK] = flight;
+        return slot;
+    }
+
+    private synchronized void grow(int page) {
+        int[][][] current = pages;
+        if (page < current.length && current[page] != null) {
+            return; // Another thread added the page first
+        }
+        int[][][] newPages = Arrays.copyOf(current, page < current.length ? current.length : Math.max(page + 1, current.length * 2));
+        Flight[][] newFlightPages = Arrays.copyOf(flightPages, newPages.length);
+        // Slots are allocated in order unless the inventory is windowed, where only the page asked for is needed
+        int from = windowMonths == null ? current.length : page;
+        int to = windowMonths == null ? newPages.length : page + 1;
+        for (int p = from; p < to; p++) {
+            newPages[p] = new int[COLUMNS][PAGE_SIZE];
+            newFlightPages[p] = new Flight[PAGE_SIZE];
+        }
+        flightPages = newFlightPages;
+        pages = newPages; // Published last; readers that see the page also see its flight page
+    }
+
+    // Builds a new inventory holding the given flights, which must be in date order, and moves each flight into it.
+    // The caller must keep the flights from changing; readers that do not lock a flight check its binding (see Flight).
+    static FlightInventory layout(List<Flight> flights) {
+        FlightInventory inventory = new FlightInventory();
+        if (flights.isEmpty()) {
+            return inventory;
+        }
+        inventory.firstDay = flights.get(0).getDate().toEpochDay();
+        long lastDay = flights.get(flights.size() - 1).getDate().toEpochDay();
+        int[] dayStart = new int[(int) (lastDay - inventory.firstDay) + 2];
+
+        int day = 0;
+        for (Flight flight : flights) {
+            int flightDay = (int) (flight.getDate().toEpochDay() - inventory.firstDay);
+            int slot = inventory.allocate(flight);
+            while (day < flightDay) {
+                dayStart[++day] = slot; // Days without flights get an empty range
+            }
+            for (int column = 0; column < COLUMNS; column++) {
+                inventory.set(slot, column, flight.inventory.get(flight.slot, column));
+            }
+            flight.slot = slot;
+            flight.inventory = inventory; // Volatile and written last: a reader that sees the new inventory sees the new slot
+        }
+        dayStart[dayStart.length - 1] = inventory.size.get();
+        inventory.dayStart = dayStart;
+        return inventory;
+    }
+
+    // Lays out a month's flights, in date order, in its window of a windowed inventory and moves each flight into it;
+    // returns false, changing nothing, if a flight is outside the month or the window is too small. Other windows are
+    // untouched. The caller must keep the flights from changing.
+    boolean layoutWindow(YearMonth month, List<Flight> flights) {
+        int window = Arrays.binarySearch(windowMonths, month);
+        int base = window < 0 ? 0 : windowStart[window];
+        if (window < 0 || flights.size() > windowStart[window + 1] - base) {
+            return false;
+        }
+        for (Flight flight : flights) {
+            if (!YearMonth.from(flight.getDate()).equals(month)) {
+                return false;
+            }
+        }
+        for (int page = base >>> PAGE_BITS; page < (base + flights.size() + PAGE_MASK) >>> PAGE_BITS; page++) {
+            if (page >= pages.length || pages[page] == null) {
+                grow(page);
+            }
+        }
+
+        int[] newDayStart = dayStart.clone();
+        int day = (int) (month.atDay(1).toEpochDay() - firstDay);
+        int lastDay = (int) (month.atEndOfMonth().toEpochDay() - firstDay);
+        int slot = base;
+        for (Flight flight : flights) {
+            int flightDay = (int) (flight.getDate().toEpochDay() - firstDay);
+            while (day < flightDay) {
+                newDayStart[++day] = slot; // Days without flights get an empty range
+            }
+            // The flight goes in before its counters, so that a reader that sees the counters sees it (see Flight)
+            flightPages[slot >>> PAGE_BITS][slot & PAGE_MASK] = flight;
+            for (int column = 0; column < COLUMNS; column++) {
+                set(slot, column, flight.inventory.get(flight.slot, column));
+            }
+            flight.slot = slot;
+            flight.inventory = this; // Volatile and written last: a reader that sees the new inventory sees the new slot
+            slot++;
+        }
+        while (day < lastDay) {
+            newDayStart[++day] = slot;
+        }
+        windowUsed[window] = slot - base;
+        dayStart = newDayStart;
+        return true;
+    }
+
+    // Empties a month's window after its flights were moved out of it, e.g. by layout; the caller holds their locks
+    void clearWindow(YearMonth month) {
+        int window = Arrays.binarySearch(windowMonths, month);
+        if (window < 0) {
+            return;
+        }
+        int base = windowStart[window];
+        int[] newDayStart = dayStart.clone();
+        int firstDayOfMonth = (int) (month.atDay(1).toEpochDay() - firstDay);
+        Arrays.fill(newDayStart, firstDayOfMonth + 1, (int) (month.atEndOfMonth().toEpochDay() - firstDay) + 1, base);
+        dayStart = newDayStart;
+        for (int slot = base; slot < base + windowUsed[window]; slot++) {
+            // The flight goes before its counters, so that a reader that sees a zero also sees the slot is unbound
+            flightPages[slot >>> PAGE_BITS][slot & PAGE_MASK] = null;
+            for (int column = 0; column < COLUMNS; column++) {
+                set(slot, column, 0);
+            }
+        }
+        windowUsed[window] = 0;
+    }
+
+    // Drops the slots allocated past the windows, once the flights created in them have been laid out in a window
+    synchronized void releaseScratch() {
+        int scratchPages = scratchStart >>> PAGE_BITS;
+        if (pages.length > scratchPages) {
+            Flight[][] newFlightPages = Arrays.copyOf(flightPages, scratchPages);
+            flightPages = newFlightPages;
+            pages = Arrays.copyOf(pages, scratchPages);
+        }
+        size.set(scratchStart);
+    }
+
+    int get(int slot, int column) {
+        return (int) INTS.getVolatile(pages[slot >>> PAGE_BITS][column], slot & PAGE_MASK);
+    }
+
+    void set(int slot, int column, int value) {
+        INTS.setVolatile(pages[slot >>> PAGE_BITS][column], slot & PAGE_MASK, value);
+    }
+
+    void add(int slot, int column, int delta) {
+        INTS.getAndAdd(pages[slot >>> PAGE_BITS][column], slot & PAGE_MASK, delta);
+    }
+
+    Flight flightAt(int slot) {
+        return flightPages[slot >>> PAGE_BITS][slot & PAGE_MASK];
+    }
+
+    public int size() {
+        return size.get();
+    }
+
+    // Returns the first slot of the first indexed day on or after date
+    public int firstSlot(LocalDate date) {
+        long day = date.toEpochDay() - firstDay;
+        if (day <= 0) {
+            return 0;
+        }
+        return dayStart[(int) Math.min(day, dayStart.length - 1)];
+    }
+
+    // Returns the slot just past the last indexed day on or before date
+    public int endSlot(LocalDate date) {
+        long day = date.toEpochDay() - firstDay + 1;
+        if (day <= 0) {
+            return 0;
+        }
+        return dayStart[(int) Math.min(day, dayStart.length - 1)];
+    }
+
+    // Sums a column over the slots [from, to), one page at a time. Scans read without locking,
+    // so a flight that is being booked may be counted before or after the booking
+    public long sum(int column, int from, int to) {
+        int[][][] pages = this.pages;
+        long total = 0;
+        while (from < to) {
+            int end = Math.min(to, (from | PAGE_MASK) + 1);
+            int page = from >>> PAGE_BITS;
+            if (page >= pages.length || pages[page] == null) {
+                from = end; // Part of a window no month has needed yet
+                continue;
+            }
+            int[] values = pages[page][column];
+            for (int i = from & PAGE_MASK, last = ((end - 1) & PAGE_MASK); i <= last; i++) {
+                total += values[i];
+            }
+            from = end;
+        }
+        return total;
+    }
+
+    // Returns the first slot in [from, to) that holds a flight and whose column value is at least min, or -1
+    public int find(int column, int min, int from, int to) {
+        int[][][] pages = this.pages;
+        Flight[][] flightPages = this.flightPages; // Read second; grow publishes it first, so it has every window page pages has
+        while (from < to) {
+            int end = Math.min(to, (from | PAGE_MASK) + 1);
+            int page = from >>> PAGE_BITS;
+            if (page >= pages.length || pages[page] == null) {
+                from = end;
+                continue;
+            }
+            int[] values = pages[page][column];
+            Flight[] flights = flightPages[page];
+            for (int i = from & PAGE_MASK, last = ((end - 1) & PAGE_MASK); i <= last; i++) {
+                if (values[i] >= min && flights[i] != null) { // Unfilled window slots hold zeros and no flight
+                    return (from & ~PAGE_MASK) + i;
+                }
+            }
+            from = end;
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,599 @@
+import java.io.BufferedWriter;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.time.DateTimeException;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Month-partitioned storage for the partitioned snapshot format, with on-demand loading and eviction.
+//
+// The snapshot directory holds one binary snapshot per month (flights-yyyy-MM.bin), each stamped with the journal
+// sequence number it contains, and an index of the months every passport has booked (passengers.idx), stamped with
+// the sequence number of the last checkpoint. Nothing is loaded up front: a month is loaded the first time a flight
+// ID, a search range or a passenger lookup needs it. Once the estimated size of the loaded months exceeds the memory
+// budget, the least recently used months are evicted; months changed since they were loaded are written back first.
+// The most recently used MIN_LOADED_MONTHS months always stay, so that a caller that looks up a flight and then a
+// passenger, or the other way round, does not lose the first month to the second load. Months a scan pinned
+// (see pinRange) also stay until the scan ends.
+//
+// Each month has a window of its own in the inventory (see FlightInventory.windowed), so loading or evicting a month
+// lays out or clears only that window and locks no other month's flights. Both run under this object's monitor and
+// evicting locks the month's flights, so they must never be called while holding a flight lock.
+public class FlightPartitions {
+    static final long BUDGET_BYTES = Long.getLong("flight.partitions.budgetMb", 256) << 20; // Estimated heap the loaded months may use
+    static final int FLIGHT_BYTES = 512; // Rough heap size of a flight with its seat map, lock and map entries
+    static final int TICKET_BYTES = 192; // Rough heap size of a ticket with its share of the passenger
+    static final int MIN_LOADED_MONTHS = Passenger.maxTickets + 1; // Kept even over budget: a booking's month and the passenger's other months
+    static final String INDEX_FILE_NAME = "passengers.idx";
+    private static final String PREFIX = "flights-";
+    private static final String SUFFIX = ".bin";
+
+    private final AnnualFlightScheduler afs; // Scheduler whose maps and inventory hold the loaded months
+    private final Path dir; // Snapshot directory
+    private final FlightInventory inventory; // Windowed inventory with a window for every month on disk
+    private final TreeMap<YearMonth, Partition> partitions = new TreeMap<>(); // Every month on disk; fixed after construction
+    private final ConcurrentHashMap<String, YearMonth[]> passengerMonths = new ConcurrentHashMap<>(); // Months each passport has booked
+    private final AtomicLong clock = new AtomicLong(); // Access counter for the LRU order
+    private long indexSeq; // Journal sequence number of the last checkpoint
+    private boolean evicting; // False while the journal is replayed; see evictIfNeeded
+
+    // One month of flights
+    private static class Partition {
+        final YearMonth month;
+        final Path file;
+        long seq; // Journal sequence number contained in the file
+        long maxFlights; // Most flights the file can hold, which sizes the month's inventory window
+        List<Flight> flights; // Loaded flights in date order, or null while the month is on disk only
+        volatile boolean dirty; // Changed since it was loaded or last written
+        volatile long lastAccess; // Clock value of the last access, for the LRU order
+        int pins; // Scans that need the month to stay loaded (see pinRange); guarded by the FlightPartitions monitor
+
+        Partition(YearMonth month, Path file) {
+            this.month = month;
+            this.file = file;
+        }
+    }
+
+    public FlightPartitions(AnnualFlightScheduler afs, String dirName) throws IOException {
+        this.afs = afs;
+        this.dir = Paths.get(dirName);
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(dir, PREFIX + "*" + SUFFIX)) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                try {
+                    YearMonth month = YearMonth.parse(name.substring(PREFIX.length(), name.length() - SUFFIX.length()));
+                    Partition partition = new Partition(month, file);
+                    partition.seq = BinarySnapshot.readSnapshotSeq(file.toString());
+                    partition.maxFlights = Files.size(file) / BinarySnapshot.MIN_FLIGHT_BYTES;
+                    partitions.put(month, partition);
+                } catch (DateTimeException e) {
+                    System.err.println("Ignoring unexpected file in snapshot directory: " + name);
+                }
+            }
+        }
+        readIndex();
+
+        YearMonth[] months = partitions.keySet().toArray(new YearMonth[0]);
+        long[] maxFlights = new long[months.length];
+        for (int i = 0; i < months.length; i++) {
+            maxFlights[i] = partitions.get(months[i]).maxFlights;
+        }
+        try {
+            inventory = FlightInventory.windowed(months, maxFlights);
+        } catch (IllegalArgumentException e) {
+            throw new IOException("Snapshot directory is too large: " + e.getMessage());
+        }
+    }
+
+    // Inventory the loaded months are laid out in; the scheduler uses it for its counters
+    FlightInventory getInventory() {
+        return inventory;
+    }
+
+    // Journal sequence number of the last checkpoint; replay starts after it
+    public long getIndexSeq() {
+        return indexSeq;
+    }
+
+    // Returns the flight with this ID, loading its month; IDs must end with their date, as Flight-n-yyyy-MM-dd does
+    Flight loadFlight(String flightID) {
+        LocalDate date = dateOf(flightID);
+        if (date == null || !partitions.containsKey(YearMonth.from(date))) {
+            return null;
+        }
+        ensureLoaded(List.of(YearMonth.from(date)));
+        return AnnualFlightScheduler.flightsById.get(flightID);
+    }
+
+    // Loads every month that overlaps the range
+    void loadRange(LocalDate from, LocalDate to) {
+        if (from.isAfter(to) || partitions.isEmpty()) {
+            return;
+        }
+        YearMonth first = YearMonth.from(from);
+        YearMonth last = YearMonth.from(to);
+        ensureLoaded(new ArrayList<>(partitions.subMap(first, true, last, true).keySet()));
+    }
+
+    // Keeps the months of a pinRange loaded until it is closed
+    public interface Pin extends AutoCloseable {
+        @Override
+        void close();
+    }
+
+    // Loads every month that overlaps the range and keeps them from being evicted until the returned pin is closed,
+    // so that a scan of their inventory slots never meets a slot cleared under it
+    synchronized Pin pinRange(LocalDate from, LocalDate to) {
+        if (from.isAfter(to) || partitions.isEmpty()) {
+            return () -> { };
+        }
+        List<Partition> pinned = new ArrayList<>(partitions.subMap(YearMonth.from(from), true, YearMonth.from(to), true).values());
+        List<YearMonth> months = new ArrayList<>(pinned.size());
+        for (Partition partition : pinned) {
+            partition.pins++; // Before loading, so that loading the later months cannot evict the earlier ones
+            months.add(partition.month);
+        }
+        ensureLoaded(months);
+        return () -> unpin(pinned);
+    }
+
+    private synchronized void unpin(List<Partition> pinned) {
+        for (Partition partition : pinned) {
+            partition.pins--;
+        }
+        evictIfNeeded(List.of());
+    }
+
+    // Loads every month the passports have booked, so that the passengers' tickets are all in memory
+    void loadPassenger(String... passportNums) {
+        List<YearMonth> months = new ArrayList<>();
+        for (String passportNum : passportNums) {
+            YearMonth[] booked = passengerMonths.get(passportNum);
+            if (booked != null) {
+                months.addAll(Arrays.asList(booked));
+            }
+        }
+        if (!months.isEmpty()) {
+            ensureLoaded(months);
+        }
+    }
+
+    // Loads every month a batch needs in one go, so that none of them is evicted for another: the months of its
+    // flights and, for bookings, every month the passenger has booked
+    void loadForBatch(List<BatchOperation> operations) {
+        Set<YearMonth> months = new HashSet<>();
+        for (BatchOperation operation : operations) {
+            LocalDate date = operation.flightID == null ? null : dateOf(operation.flightID);
+            if (date != null) {
+                months.add(YearMonth.from(date));
+            }
+            YearMonth[] booked = operation.type == BatchOperation.Type.BOOK ? passengerMonths.get(operation.passportNum) : null;
+            if (booked != null) {
+                months.addAll(Arrays.asList(booked));
+            }
+        }
+        ensureLoaded(months);
+    }
+
+    // Loads every month; exports need the whole schedule, so this may exceed the budget until the next load
+    void loadAll() {
+        ensureLoaded(new ArrayList<>(partitions.keySet()));
+    }
+
+    // Last day of the last month on disk, or null without months
+    LocalDate lastDate() {
+        return partitions.isEmpty() ? null : partitions.lastKey().atEndOfMonth();
+    }
+
+    // Moves a loaded month to the front of the LRU order
+    void touch(LocalDate date) {
+        Partition partition = partitions.get(YearMonth.from(date));
+        if (partition != null) {
+            partition.lastAccess = clock.incrementAndGet();
+        }
+    }
+
+    // Marks the month of a changed flight for write-back; the caller holds the flight's lock or this monitor
+    void markDirty(LocalDate date) {
+        Partition partition = partitions.get(YearMonth.from(date));
+        if (partition != null) {
+            partition.dirty = true;
+        }
+    }
+
+    // Adds a booking's month to the passenger index
+    void indexBooking(String passportNum, LocalDate date) {
+        YearMonth month = YearMonth.from(date);
+        passengerMonths.compute(passportNum, (k, months) -> {
+            if (months == null) {
+                return new YearMonth[] {month};
+            }
+            for (YearMonth m : months) {
+                if (m.equals(month)) {
+                    return months;
+                }
+            }
+            YearMonth[] grown = Arrays.copyOf(months, months.length + 1);
+            grown[months.length] = month;
+            return grown;
+        });
+    }
+
+    // Moves the index entry of a passport that was changed to another one
+    void renamePassenger(String oldPassportNum, String newPassportNum) {
+        YearMonth[] months = passengerMonths.remove(oldPassportNum);
+        if (months != null) {
+            for (YearMonth month : months) {
+                indexBooking(newPassportNum, month.atDay(1));
+            }
+        }
+    }
+
+    // Returns whether the month of this date was written after the journal record with this sequence number
+    boolean contains(LocalDate date, long seq) {
+        Partition partition = partitions.get(YearMonth.from(date));
+        return partition != null && seq <= partition.seq;
+    }
+
+    // Turns eviction on once the journal has been replayed
+    synchronized void startEvicting() {
+        evicting = true;
+        evictIfNeeded(List.of());
+    }
+
+    public synchronized int getLoadedCount() {
+        int loaded = 0;
+        for (Partition partition : partitions.values()) {
+            if (partition.flights != null) {
+                loaded++;
+            }
+        }
+        return loaded;
+    }
+
+    // Loads the months that are not in memory yet, then evicts other months until the budget is met again
+    private synchronized void ensureLoaded(Collection<YearMonth> months) {
+        long now = clock.incrementAndGet();
+        for (YearMonth month : months) {
+            Partition partition = partitions.get(month);
+            if (partition == null) {
+                continue;
+            }
+            partition.lastAccess = now;
+            if (partition.flights == null) {
+                load(partition);
+            }
+        }
+        evictIfNeeded(months);
+    }
+
+    private void load(Partition partition) {
+        long start = Metrics.ENABLED ? System.nanoTime() : 0;
+        List<Flight> flights;
+        try {
+            BinarySnapshot loader = new BinarySnapshot(afs);
+            flights = loader.load(partition.file.toString());
+            partition.seq = loader.getSnapshotSeq();
+        } catch (IOException e) {
+            inventory.releaseScratch();
+            System.err.println("Failed to read partition file: " + e.getMessage());
+            return;
+        }
+
+        // The new flights are not reachable yet, and only the month's own window changes
+        boolean laidOut = inventory.layoutWindow(partition.month, flights);
+        inventory.releaseScratch();
+        if (!laidOut) {
+            System.err.println("Partition file holds flights outside its month: " + partition.file);
+            for (Flight flight : flights) {
+                flight.detached = true;
+            }
+            dropDetachedPassengers();
+            return;
+        }
+
+        afs.addLoadedFlights(flights);
+        partition.flights = flights;
+        partition.dirty = false;
+        if (Metrics.ENABLED) {
+            Metrics.PARTITION_LOAD.record(System.nanoTime() - start);
+        }
+    }
+
+    // Evicts the least recently used months, except the pinned ones and those with seat holds, while the loaded months
+    // exceed the budget.
+    // While the journal is replayed nothing is evicted: the journal's last sequence number is already past the
+    // records that are still to be replayed, so a month written back then would claim to contain them.
+    private void evictIfNeeded(Collection<YearMonth> pinned) {
+        while (evicting && getLoadedCount() > MIN_LOADED_MONTHS && estimatedBytes() > BUDGET_BYTES) {
+            Partition victim = null;
+            for (Partition partition : partitions.values()) {
+                if (partition.flights != null && partition.pins == 0 && !pinned.contains(partition.month)
+                        && !hasHolds(partition.flights)
+                        && (victim == null || partition.lastAccess < victim.lastAccess)) {
+                    victim = partition;
+                }
+            }
+            if (victim == null || !evict(victim)) {
+                return;
+            }
+        }
+    }
+
+    // Checks whether any of the flights has a seat held; without the flight locks the answer may be stale
+    private static boolean hasHolds(List<Flight> flights) {
+        for (Flight flight : flights) {
+            if (flight.heldSeats > 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // Writes a month back if it changed, then drops its flights and tickets; returns false if the write failed or
+    // a seat was held in the month meanwhile
+    private boolean evict(Partition partition) {
+        AnnualFlightScheduler.lockFlights(partition.flights);
+        try {
+            if (hasHolds(partition.flights)) {
+                return false; // Holds are not part of the month file, so they keep the month in memory
+            }
+            if (partition.dirty) {
+                // Synced first so that no month on disk is ever ahead of the journal
+                afs.journal.sync();
+                long seq = afs.journal.getLastSeq();
+                if (!write(partition, snapshot(partition.flights), seq)) {
+                    return false;
+                }
+                partition.dirty = false;
+            }
+
+            for (Flight flight : partition.flights) {
+                flight.detached = true;
+                AnnualFlightScheduler.flightsById.remove(flight.flightID, flight);
+                AnnualFlightScheduler.flightsByDate.remove(flight.getDate());
+            }
+            // Callers still holding an evicted flight read its counters from an inventory of its own
+            FlightInventory.layout(partition.flights);
+            inventory.clearWindow(partition.month);
+        } finally {
+            AnnualFlightScheduler.unlockFlights(partition.flights);
+        }
+        dropDetachedPassengers();
+
+        // A search that rendered the month while it was being evicted must not stay cached
+        for (LocalDate date = partition.month.atDay(1); !date.isAfter(partition.month.atEndOfMonth()); date = date.plusDays(1)) {
+            AnnualFlightScheduler.availabilityCache.invalidate(date);
+        }
+        partition.flights = null;
+        if (Metrics.ENABLED) {
+            Metrics.PARTITION_EVICTIONS.increment();
+        }
+        return true;
+    }
+
+    // Takes the tickets of detached flights from their passengers, and drops the passengers that are left without
+    // tickets from the index. A passenger is dropped under its index entry's lock, which registering a
+    // passenger also takes, and its own monitor, which adding a ticket takes (see Flight.addToPassenger).
+    private void dropDetachedPassengers() {
+        for (Passenger passenger : afs.passengersByPassport.values()) {
+            if (passenger.dropDetachedTickets() && passenger.getTickets().isEmpty()) {
+                afs.passengersByPassport.computeIfPresent(passenger.getPassportNum(),
+                        (passportNum, indexed) -> indexed == passenger && passenger.drop() ? null : indexed);
+            }
+        }
+    }
+
+    // Estimated heap used by the loaded months, from their flight and ticket counts
+    private long estimatedBytes() {
+        long bytes = 0;
+        for (Partition partition : partitions.values()) {
+            if (partition.flights != null) {
+                int first = inventory.firstSlot(partition.month.atDay(1));
+                int end = inventory.endSlot(partition.month.atEndOfMonth());
+                long tickets = inventory.sum(FlightInventory.CONFIRMED, first, end)
+                        + inventory.sum(FlightInventory.WAITLIST, first, end);
+                bytes += (long) partition.flights.size() * FLIGHT_BYTES + tickets * TICKET_BYTES;
+            }
+        }
+        return bytes;
+    }
+
+    // Takes a checkpoint: cuts the journal while every resident flight is locked, copies the changed months, then
+    // writes them and the index. Returns the checkpoint's sequence number, or -1 if a file could not be written.
+    synchronized long checkpoint() {
+        List<Flight> flights = afs.getAllFlights();
+        List<Partition> changed = new ArrayList<>();
+        List<List<FlightSnapshot>> snapshots = new ArrayList<>();
+        long seq;
+        AnnualFlightScheduler.lockFlights(flights);
+        try {
+            afs.journal.rotate();
+            seq = afs.journal.getLastSeq();
+            afs.carryHolds(); // Holds are not in the month files, so the new journal starts with them
+            for (Partition partition : partitions.values()) {
+                if (partition.flights != null && partition.dirty) {
+                    changed.add(partition);
+                    snapshots.add(snapshot(partition.flights));
+                    partition.dirty = false;
+                }
+            }
+        } finally {
+            AnnualFlightScheduler.unlockFlights(flights);
+        }
+
+        boolean written = true;
+        for (int i = 0; i < changed.size(); i++) {
+            if (!write(changed.get(i), snapshots.get(i), seq)) {
+                changed.get(i).dirty = true; // Tried again by the next checkpoint or eviction
+                written = false;
+            }
+        }
+        if (!written || !writeIndex(seq)) {
+            return -1;
+        }
+        indexSeq = seq;
+        return seq;
+    }
+
+    // Copies a month's flights; the caller holds their locks
+    private static List<FlightSnapshot> snapshot(List<Flight> flights) {
+        List<FlightSnapshot> snapshots = new ArrayList<>(flights.size());
+        for (Flight flight : flights) {
+            snapshots.add(new FlightSnapshot(flight));
+        }
+        return snapshots;
+    }
+
+    private static boolean write(Partition partition, List<FlightSnapshot> snapshots, long seq) {
+        try {
+            BinarySnapshot.write(partition.file.toString(), snapshots, seq);
+            partition.seq = seq;
+            return true;
+        } catch (IOException e) {
+            System.err.println("Failed to write partition file: " + e.getMessage());
+            return false;
+        }
+    }
+
+    // Reads the passenger index: a sequence number header, then one "passport<TAB>yyyy-MM,yyyy-MM" line per passport
+    private void readIndex() throws IOException {
+        Path file = dir.resolve(INDEX_FILE_NAME);
+        if (!Files.exists(file)) {
+            return;
+        }
+        for (String line : Files.readAllLines(file, StandardCharsets.UTF_8)) {
+            if (line.startsWith(AnnualFlightScheduler.SEQ_MARKER)) {
+                indexSeq = Long.parseLong(line.substring(AnnualFlightScheduler.SEQ_MARKER.length()));
+                continue;
+            }
+            int tab = line.indexOf('\t');
+            if (tab <= 0) {
+                continue;
+            }
+            String[] monthNames = line.substring(tab + 1).split(",");
+            YearMonth[] months = new YearMonth[monthNames.length];
+            for (int i = 0; i < months.length; i++) {
+                months[i] = YearMonth.parse(monthNames[i]);
+            }
+            passengerMonths.put(line.substring(0, tab), months);
+        }
+    }
+
+    // Writes the passenger index to a temporary file, syncs it and renames it over the index
+    private boolean writeIndex(long seq) {
+        return writeIndex(dir, passengerMonths, seq);
+    }
+
+    private static boolean writeIndex(Path dir, Map<String, YearMonth[]> passengerMonths, long seq) {
+        Path file = dir.resolve(INDEX_FILE_NAME);
+        Path tempFile = dir.resolve(INDEX_FILE_NAME + ".tmp");
+        try {
+            try (FileOutputStream out = new FileOutputStream(tempFile.toFile());
+                 BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8))) {
+                writer.write(AnnualFlightScheduler.SEQ_MARKER + seq + "\n");
+                for (Map.Entry<String, YearMonth[]> entry : passengerMonths.entrySet()) {
+                    writer.write(entry.getKey());
+                    char separator = '\t';
+                    for (YearMonth month : entry.getValue()) {
+                        writer.write(separator);
+                        writer.write(month.toString());
+                        separator = ',';
+                    }
+                    writer.write('\n');
+                }
+                writer.flush();
+                out.getFD().sync(); // The rotated journal is deleted once the index is in place
+            }
+            Files.move(tempFile, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            return true;
+        } catch (IOException e) {
+            System.err.println("Failed to write passenger index: " + e.getMessage());
+            return false;
+        }
+    }
+
+    // Writes flights, in date order, as a partitioned snapshot: one file per month plus the passenger index
+    static void export(String dirName, List<FlightSnapshot> flights, long seq) throws IOException {
+        Path dir = Files.createDirectories(Paths.get(dirName));
+        Map<String, YearMonth[]> passengerMonths = new TreeMap<>();
+        int from = 0;
+        while (from < flights.size()) {
+            YearMonth month = YearMonth.from(flights.get(from).date);
+            int to = from;
+            while (to < flights.size() && YearMonth.from(flights.get(to).date).equals(month)) {
+                to++;
+            }
+            List<FlightSnapshot> monthFlights = flights.subList(from, to);
+            BinarySnapshot.write(dir.resolve(PREFIX + month + SUFFIX).toString(), monthFlights, seq);
+            for (FlightSnapshot flight : monthFlights) {
+                for (String passportNum : flight.confirmedPassports) {
+                    addMonth(passengerMonths, passportNum, month);
+                }
+                for (String passportNum : flight.waitlistedPassports) {
+                    addMonth(passengerMonths, passportNum, month);
+                }
+            }
+            from = to;
+        }
+        if (!writeIndex(dir, passengerMonths, seq)) {
+            throw new IOException("Failed to write passenger index in " + dirName);
+        }
+    }
+
+    private static void addMonth(Map<String, YearMonth[]> passengerMonths, String passportNum, YearMonth month) {
+        YearMonth[] months = passengerMonths.get(passportNum);
+        if (months == null) {
+            passengerMonths.put(passportNum, new YearMonth[] {month});
+        } else if (!months[months.length - 1].equals(month)) { // Flights come in date order, so a repeat is always last
+            YearMonth[] grown = Arrays.copyOf(months, months.length + 1);
+            grown[months.length] = month;
+            passengerMonths.put(passportNum, grown);
+        }
+    }
+
+    // Returns the date at the end of an ID of the form ...-yyyy-MM-dd, or null
+    static LocalDate dateOf(String flightID) {
+        if (flightID.length() < 10) {
+            return null;
+        }
+        try {
+            return LocalDate.parse(flightID.substring(flightID.length() - 10), AnnualFlightScheduler.formatter);
+        } catch (DateTimeException e) {
+            return null;
+        }
+    }
+
+    // Splits a snapshot into monthly partitions: java FlightPartitions <flights.csv> <directory>
+    public static void main(String[] args) throws IOException {
+        if (args.length != 2) {
+            System.err.println("Usage: java FlightPartitions <csv file> <directory>");
+            return;
+        }
+        Path journal = Files.createTempFile("flights", ".journal"); // The conversion has no journal of its own
+        try {
+            AnnualFlightScheduler afs = new AnnualFlightScheduler(args[0], journal.toString());
+            afs.exportSnapshot(args[1], AnnualFlightScheduler.SnapshotFormat.PARTITIONED);
+            System.out.println("Split " + args[0] + " into " + args[1]);
+        } finally {
+            Files.deleteIfExists(journal);
+        }
+    }
+}
@@ -0,0 +1,94 @@
+import java.time.LocalDate;
+
+// Point-in-time copy of one flight, taken under the flight's lock and written out by the snapshot formats
+public class FlightSnapshot {
+    final String flightID; // Unique identifier for the flight
+    final LocalDate date; // Departure date of the flight
+    final int capacity; // Total number of seats
+    final int businessSeats; // Number of business seats
+    final int confirmedSeats; // Number of confirmed seats
+    final int emptySeats; // Number of empty seats; held seats count as empty, since the journal restores holds
+    final int heldSeats; // Number of held seats, which the waiting list must not be promoted into on loading
+    final String[] confirmedNames; // Names of confirmed passengers, in booking order
+    final String[] confirmedPassports; // Passport numbers of confirmed passengers
+    final int[] confirmedSeatNumbers; // Assigned seat of each confirmed passenger, or -1
+    final String[] waitlistedNames; // Names of waitlisted passengers, in promotion order
+    final String[] waitlistedPassports; // Passport numbers of waitlisted passengers
+    final SeatMap.Cabin[] waitlistedCabins; // Requested cabin of each waitlisted passenger
+    final Ticket.LoyaltyTier[] waitlistedTiers; // Loyalty tier each waitlisted passenger booked with
+
+    // Copies the flight's state; the caller holds the flight's lock
+    public FlightSnapshot(Flight flight) {
+        this.flightID = flight.flightID;
+        this.date = flight.getDate();
+        this.capacity = flight.getCapacity();
+        this.businessSeats = flight.seatMap.getSeats(SeatMap.Cabin.BUSINESS);
+        this.confirmedSeats = flight.getConfirmedSeats();
+        this.emptySeats = flight.getEmptySeats() + flight.heldSeats;
+        this.heldSeats = flight.heldSeats;
+
+        int confirmedCount = flight.confirmedTicketList.size();
+        confirmedNames = new String[confirmedCount];
+        confirmedPassports = new String[confirmedCount];
+        confirmedSeatNumbers = new int[confirmedCount];
+        int i = 0;
+        for (Ticket ticket : flight.confirmedTicketList) {
+            Passenger passenger = ticket.getPassenger();
+            confirmedNames[i] = passenger.getName();
+            confirmedPassports[i] = passenger.getPassportNum();
+            confirmedSeatNumbers[i] = ticket.getSeat();
+            i++;
+        }
+
+        int waitlistCount = flight.waitingList.size();
+        waitlistedNames = new String[waitlistCount];
+        waitlistedPassports = new String[waitlistCount];
+        waitlistedCabins = new SeatMap.Cabin[waitlistCount];
+        waitlistedTiers = new Ticket.LoyaltyTier[waitlistCount];
+        i = 0;
+        for (Ticket ticket : flight.waitingList) {
+            Passenger passenger = ticket.getPassenger();
+            waitlistedNames[i] = passenger.getName();
+            waitlistedPassports[i] = passenger.getPassportNum();
+            waitlistedCabins[i] = ticket.getCabin();
+            waitlistedTiers[i] = ticket.getLoyaltyTier();
+            i++;
+        }
+    }
+
+    // Converts the flight to one CSV row
+    public String toCsvRow() {
+        StringBuilder sb = new StringBuilder();
+        sb.append(flightID).append(',').append(date).append(",Available,");
+        for (int i = 0; i < confirmedNames.length; i++) {
+            if (i > 0) {
+                sb.append(';');
+            }
+            sb.append(confirmedNames[i]).append('(').append(confirmedPassports[i]).append(')');
+            if (confirmedSeatNumbers[i] >= 0) {
+                sb.append('@').append(confirmedSeatNumbers[i] + 1);
+            }
+        }
+        sb.append(',');
+        for (int i = 0; i < waitlistedNames.length; i++) {
+            if (i > 0) {
+                sb.append(';');
+            }
+            sb.append(waitlistedNames[i]).append('(').append(waitlistedPassports[i]).append(')');
+            if (waitlistedCabins[i] == SeatMap.Cabin.BUSINESS) {
+                sb.append("@B");
+            }
+            if (waitlistedTiers[i] != Ticket.LoyaltyTier.NONE) {
+                sb.append('#').append(waitlistedTiers[i].name());
+            }
+        }
+        sb.append(',').append(confirmedSeats).append(',').append(emptySeats).append(',')
+                .append(waitlistedNames.length).append(',').append(capacity).append(',')
+                .append(businessSeats);
+        if (heldSeats > 0) {
+            sb.append(',').append(heldSeats); // Optional column, so rows without holds keep the older layout
+        }
+        sb.append('\n');
+        return sb.toString();
+    }
+}
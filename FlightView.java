@@ -0,0 +1,67 @@
+import java.time.LocalDate;
+
+// Immutable seat counts of one flight as of one version. A flight publishes a new view each time the changes made
+// under its lock are complete, so a search holding a view never sees a booking half applied; see ReadView for
+// versions. Views hold counters only, so publishing one costs the same on a full flight as on an empty one; a
+// ticket's own status is read from its flight with Flight.getTicketState.
+public class FlightView {
+    final Flight flight; // The flight this is a version of
+    volatile long version; // Commit version; 0 for the state a flight was loaded with, ReadView.PENDING while committing
+    FlightView prior; // The previous version, kept while an open read view may need it
+    private final int capacity; // Total number of seats
+    private final int confirmedSeats; // Number of confirmed seats
+    private final int emptySeats; // Number of seats neither confirmed nor held
+    private final int waitlistCount; // Number of passengers on the waiting list
+    private final boolean vacancy; // Whether the flight took bookings without waitlisting them
+
+    // Copies the flight's counters; the caller holds the flight's lock, or the flight is not reachable yet
+    FlightView(Flight flight) {
+        this.flight = flight;
+        this.capacity = flight.getCapacity();
+        this.confirmedSeats = flight.getConfirmedSeats();
+        this.emptySeats = flight.getEmptySeats();
+        this.waitlistCount = flight.getWaitlistCount();
+        this.vacancy = flight.vacancyStatus;
+    }
+
+    public Flight getFlight() {
+        return flight;
+    }
+
+    public String getFlightID() {
+        return flight.flightID;
+    }
+
+    public LocalDate getDate() {
+        return flight.getDate();
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    public int getConfirmedSeats() {
+        return confirmedSeats;
+    }
+
+    public int getEmptySeats() {
+        return emptySeats;
+    }
+
+    public int getWaitlistCount() {
+        return waitlistCount;
+    }
+
+    public boolean hasVacancy() {
+        return emptySeats > 0;
+    }
+
+    @Override
+    public String toString() {
+        return "Flight ID: " + flight.flightID +
+                " Total seat available: " + capacity +
+                " Seat booked: " + confirmedSeats +
+                " Seat available: " + emptySeats +
+                " Vacancy Status: " + vacancy;
+    }
+}
@@ -1,47 +1,133 @@
+import java.io.BufferedWriter;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.time.DayOfWeek;
 import java.time.LocalDate;
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.List;
+import java.util.Random;
 
 public class GenerateFlightsCsv {
+    static final int[] aircraftSeats = {50, 120, 180, 250, 400}; // Seat capacities of the aircraft in the fleet
 
     public static void main(String[] args) {
-        String filePath = "C:\\Users\\Austin\\Desktop\\datastruc-main\\"; 
+        String filePath = "C:\\Users\\Austin\\Desktop\\datastruc-main\\";
         String fileName = "flights.csv";
 
-        HashMap<LocalDate, ArrayList<String>> flightsByDate = new HashMap<>();
-
         LocalDate startDate = LocalDate.of(2024, 12, 5);
         LocalDate endDate = LocalDate.of(2025, 12, 31);
 
-        while (!startDate.isAfter(endDate)) {
-            ArrayList<String> dailyFlights = new ArrayList<>(); 
-            for (int i = 0; i < 3; i++) {
-                String flightID = "Flight-" + i + "-" + startDate; 
-                dailyFlights.add(flightID); 
-            }
-            flightsByDate.put(startDate, dailyFlights); 
-            startDate = startDate.plusDays(1);
+        try {
+            generate(filePath + fileName, startDate, endDate, 3, 0);
+            System.out.println("The CSV file was generated:" + filePath + fileName);
+        } catch (IOException e) {
+            System.err.println("Failed to write CSV file: " + e.getMessage());
         }
+    }
 
-        try (FileWriter writer = new FileWriter(filePath + fileName)) {
+    // Writes an empty schedule; seats <= 0 picks each flight's capacity from the fleet
+    public static void generate(String fileName, LocalDate startDate, LocalDate endDate,
+                                int flightsPerDay, int seats) throws IOException {
+        try (BufferedWriter writer = new BufferedWriter(new FileWriter(fileName))) {
             writer.write("Flight ID,Date,Status,Confirmed Passengers," +
-                    "Waitlisted Passengers,Confirmed Seats,Empty Seats,Waitlist Count\n");
+                    "Waitlisted Passengers,Confirmed Seats,Empty Seats,Waitlist Count,Capacity,Business Seats\n");
 
-            for (LocalDate date : flightsByDate.keySet()) {
-                for (int i = 0; i < 3; i++) { 
-                    String flightID = "Flight-" + i + "-" + date; 
+            for (LocalDate date = startDate; !date.isAfter(endDate); date = date.plusDays(1)) {
+                for (int i = 0; i < flightsPerDay; i++) {
+                    String flightID = "Flight-" + i + "-" + date;
+                    int capacity = seats > 0 ? seats : aircraftSeats[(date.getDayOfYear() + i) % aircraftSeats.length];
+                    int businessSeats = capacity / 10; // Roughly a tenth of the cabin is business class
 
-                    writer.write(flightID + "," + date + ",Available," + 
-                            "" + "," + "" + "," + 
-                            0 + "," + 5 + "," + 0 + "\n"); 
+                    writer.write(flightID + "," + date + ",Available," +
+                            "" + "," + "" + "," +
+                            0 + "," + capacity + "," + 0 + "," +
+                            capacity + "," + businessSeats + "\n");
                 }
             }
+        }
+    }
 
-            System.out.println("The CSV file was generated:" + filePath + fileName);
-        } catch (IOException e) {
-            System.err.println("Failed to write CSV file: " + e.getMessage());
+    // Writes a schedule that looks like a real one: more flights on Fridays and Sundays, demand that peaks in summer and
+    // around the year-end holidays, popular low flight numbers, and per-flight noise around the fill level (0.8 books
+    // an average flight to about 80%). Flights whose demand exceeds their capacity are full and have a waiting list.
+    // Passengers fly up to three times each, within the ticket limit, and some waitlisted ones hold a loyalty tier.
+    // The same seed gives the same schedule.
+    public static void generateSkewed(String fileName, LocalDate startDate, LocalDate endDate, int flightsPerDay,
+                                      double fill, long seed) throws IOException {
+        Random random = new Random(seed);
+        List<LocalDate> dates = new ArrayList<>();
+        List<int[]> flights = new ArrayList<>(); // capacity, confirmed, waitlisted; rows of one date are adjacent
+        long tickets = 0;
+        for (LocalDate date = startDate; !date.isAfter(endDate); date = date.plusDays(1)) {
+            DayOfWeek day = date.getDayOfWeek();
+            int dailyFlights = day == DayOfWeek.FRIDAY || day == DayOfWeek.SUNDAY ? flightsPerDay + (flightsPerDay + 1) / 2
+                    : day == DayOfWeek.SATURDAY ? Math.max(1, flightsPerDay * 3 / 4) : flightsPerDay;
+            double season = 1 + 0.15 * Math.cos(2 * Math.PI * (date.getDayOfYear() - 196) / 365.0)
+                    + (date.getMonthValue() == 12 && date.getDayOfMonth() >= 18 ? 0.2 : 0);
+            double meanPopularity = 0;
+            for (int i = 0; i < dailyFlights; i++) {
+                meanPopularity += 1 / (1 + 0.1 * i) / dailyFlights;
+            }
+            for (int i = 0; i < dailyFlights; i++) {
+                int capacity = aircraftSeats[(date.getDayOfYear() + i) % aircraftSeats.length];
+                double popularity = 1 / (1 + 0.1 * i) / meanPopularity; // Low flight numbers are the convenient departure times
+                double demand = fill * season * weekdayDemand(day) * popularity * Math.exp(0.25 * random.nextGaussian());
+                int confirmed = (int) Math.min(capacity, Math.round(demand * capacity));
+                int waitlisted = demand > 1 ? (int) Math.min(capacity / 5, Math.round((demand - 1) * capacity)) : 0;
+                dates.add(date);
+                flights.add(new int[]{capacity, confirmed, waitlisted});
+                tickets += confirmed + waitlisted;
+            }
+        }
+
+        // Ticket t goes to passenger t % passengers. A flight's tickets are consecutive, so nobody is on a flight twice
+        int largest = 0;
+        for (int[] flight : flights) {
+            largest = Math.max(largest, flight[1] + flight[2]);
+        }
+        long passengers = Math.max(largest + 1, (tickets + 2) / 3);
+        Ticket.LoyaltyTier[] tiers = Ticket.LoyaltyTier.values();
+        long ticket = 0;
+        int flightNumber = 0;
+        LocalDate previous = null;
+        try (BufferedWriter writer = new BufferedWriter(new FileWriter(fileName))) {
+            writer.write("Flight ID,Date,Status,Confirmed Passengers," +
+                    "Waitlisted Passengers,Confirmed Seats,Empty Seats,Waitlist Count,Capacity,Business Seats\n");
+            StringBuilder sb = new StringBuilder();
+            for (int f = 0; f < flights.size(); f++) {
+                LocalDate date = dates.get(f);
+                flightNumber = date.equals(previous) ? flightNumber + 1 : 0;
+                previous = date;
+                int[] flight = flights.get(f);
+                sb.setLength(0);
+                sb.append("Flight-").append(flightNumber).append('-').append(date).append(',').append(date).append(",Available,");
+                for (int i = 0; i < flight[1]; i++, ticket++) {
+                    sb.append(i > 0 ? ";" : "").append("Passenger ").append(ticket % passengers).append("(G").append(ticket % passengers).append(')');
+                }
+                sb.append(',');
+                for (int i = 0; i < flight[2]; i++, ticket++) {
+                    sb.append(i > 0 ? ";" : "").append("Passenger ").append(ticket % passengers).append("(G").append(ticket % passengers).append(')');
+                    if (random.nextInt(4) == 0) {
+                        sb.append('#').append(tiers[1 + random.nextInt(tiers.length - 1)].name());
+                    }
+                }
+                sb.append(',').append(flight[1]).append(',').append(flight[0] - flight[1]).append(',').append(flight[2])
+                        .append(',').append(flight[0]).append(',').append(flight[0] / 10).append('\n');
+                writer.write(sb.toString());
+            }
+        }
+    }
+
+    // Relative demand by day of the week: business travel early in the week, leisure travel around the weekend
+    private static double weekdayDemand(DayOfWeek day) {
+        switch (day) {
+            case MONDAY: return 1.0;
+            case TUESDAY: return 0.8;
+            case WEDNESDAY: return 0.85;
+            case THURSDAY: return 1.0;
+            case FRIDAY: return 1.15;
+            case SATURDAY: return 0.9;
+            default: return 1.1;
         }
     }
 }
\ No newline at end of file
@@ -1,13 +1,14 @@
 import java.time.LocalDate;
 import java.time.format.DateTimeFormatter;
 import java.util.Scanner;
+import java.util.concurrent.CompletionException;
 
 public class Main {
     public static AnnualFlightScheduler afs; // Instance of the flight scheduler
+    private static final Scanner sc = new Scanner(System.in); // Shared by every prompt; a second Scanner would lose input the first one buffered
 
     public static void main(String[] args) {
         afs = new AnnualFlightScheduler(); // Initialize the flight scheduler
-        Scanner sc = new Scanner(System.in);
         int choice; 
 
         do { 
@@ -38,7 +39,6 @@ public class Main {
                 }
                 case 3:
                     Main.EditTicketInformation(); // Edit passenger information
-                    Main.afs.saveFlightsToCsv(); // Save changes to the CSV
                     break;
                 case 4: {
                     System.out.println("Please enter your passport number:");
@@ -60,24 +60,33 @@ public class Main {
             }
         } while (choice != 6); 
 
+        afs.close(); // Write a final snapshot and close the journal
+
         System.out.println("Thanks for using!");
     }
 
     // Edits passenger information (name and passport number)
     public static void EditTicketInformation(){
-        Scanner s = new Scanner(System.in);
         System.out.println("Enter your current passport number");
-        String passportNum = s.nextLine();
+        String passportNum = sc.nextLine();
     
         Passenger passenger = afs.getPassengerInfo(passportNum); // Retrieve passenger information
     
         if(passenger != null){
             System.out.println("Enter new name (press Enter to skip):");
-            String newName = s.nextLine();
+            String newName = sc.nextLine();
             System.out.println("Enter new passport number (press Enter to skip):");
-            String newPassportNum = s.nextLine();
-            
-            passenger.editPassengerDetails(newName, newPassportNum); // Update passenger details
+            String newPassportNum = sc.nextLine();
+
+            // Update passenger details, re-key the passenger index and append the change to the journal
+            try {
+                if(!afs.editPassenger(passenger, newName, newPassportNum)){
+                    System.out.println("That passport number already belongs to another passenger.");
+                    return;
+                }
+            } catch (CompletionException e) {
+                System.err.println("Warning: the change could not be saved to the journal and will be lost on restart.");
+            }
             System.out.println("Passenger details updated successfully.");
         }else{
             System.out.println("Passenger not found");
@@ -86,25 +95,29 @@ public class Main {
     
     // Books a ticket for a flight
     public static void BookTicket() { 
-        Scanner sc = new Scanner(System.in);
         System.out.println("Enter the flight ID (format: Flight-<number>-<yyyy-MM-dd>):");
         String flightID = sc.nextLine();
         System.out.println("Please enter your name:");
         String name = sc.nextLine();
         System.out.println("Please enter your passport number:");
         String passportNum = sc.nextLine();
+        System.out.println("Please enter your cabin, economy or business (press Enter for economy):");
+        SeatMap.Cabin cabin = sc.nextLine().trim().equalsIgnoreCase("business") ? SeatMap.Cabin.BUSINESS : SeatMap.Cabin.ECONOMY;
 
         Flight flight = AnnualFlightScheduler.processFlightID(flightID); // Get the Flight object
+        if (flight == null) {
+            System.out.println("Flight not found: " + flightID);
+            return;
+        }
 
-        Passenger passenger = new Passenger(passportNum, name); // Create a Passenger object
+        Passenger passenger = afs.registerPassenger(passportNum, name); // Reuse the passenger if the passport is already known
 
-        flight.bookFlight(passenger, flight); // Book the flight for the passenger
+        flight.bookFlight(passenger, flight, cabin); // Book the flight for the passenger
 
     }
 
     // Cancels a booked ticket
     public static void CancelTicket(){
-        Scanner sc = new Scanner(System.in);
         System.out.println("Enter the flight ID:");
         String flightID = sc.nextLine();
         System.out.println("Enter your passport number:");
@@ -117,7 +130,6 @@ public class Main {
             boolean result = flight.cancelTicket(passenger); // Cancel the ticket
             if(result){
                 System.out.println("Ticket successfully canceled.");
-                afs.saveFlightsToCsv(); // Save changes to CSV
             }else{
                 System.out.println("Failed to cancel the ticket. Please check your information.");
             }
@@ -128,14 +140,15 @@ public class Main {
     
     // Searches for flights within a specified date range
     public static void SearchFlightForWeek(){
-        Scanner sc=new Scanner(System.in);
         DateTimeFormatter formatter=DateTimeFormatter.ofPattern("yyyy-MM-dd");
         System.out.println("Enter a starting date:");
         LocalDate date1=LocalDate.parse(sc.nextLine(),formatter);
         System.out.println("Enter an ending date:");
         LocalDate date2=LocalDate.parse(sc.nextLine(),formatter);
+        System.out.println("Only show flights with empty seats? (y/N):");
+        boolean vacancyOnly=sc.nextLine().trim().equalsIgnoreCase("y");
 
-        AnnualFlightScheduler.searchFlights(date1,date2);
+        AnnualFlightScheduler.searchFlights(date1,date2,vacancyOnly);
     }
 
 }
\ No newline at end of file
@@ -0,0 +1,109 @@
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+// Tickets of one flight list in booking order, kept in a compact array. Each ticket remembers its index,
+// so removing any ticket is O(1); removed entries are nulled and squeezed out when the array fills up.
+// Not thread-safe: the owning flight's lock guards it.
+public class Manifest implements Iterable<Ticket> {
+    private static final Ticket[] NO_TICKETS = new Ticket[0];
+    static final Manifest EMPTY = new Manifest(); // Shared by flights until their first ticket; never added to
+
+    private Ticket[] tickets = NO_TICKETS; // Entries [head, tail) hold tickets or null where one was removed
+    private int head; // Index of the oldest entry
+    private int tail; // Index just past the newest entry
+    private int size; // Number of tickets
+
+    // Appends a ticket
+    public void add(Ticket ticket) {
+        if (tail == tickets.length) {
+            makeRoom();
+        }
+        ticket.manifestIndex = tail;
+        tickets[tail++] = ticket;
+        size++;
+    }
+
+    // Removes a ticket; returns false if it is not in this manifest
+    public boolean remove(Ticket ticket) {
+        int index = ticket.manifestIndex;
+        if (index < head || index >= tail || tickets[index] != ticket) {
+            return false;
+        }
+        tickets[index] = null;
+        size--;
+        while (head < tail && tickets[head] == null) {
+            head++;
+        }
+        return true;
+    }
+
+    // Returns the oldest ticket, or null if there is none
+    public Ticket peek() {
+        return size == 0 ? null : tickets[head];
+    }
+
+    // Removes and returns the oldest ticket, or null if there is none
+    public Ticket poll() {
+        Ticket ticket = peek();
+        if (ticket != null) {
+            remove(ticket);
+        }
+        return ticket;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    // Squeezes out removed entries, growing the array only when it is more than half full
+    private void makeRoom() {
+        Ticket[] target = size < tickets.length / 2 ? tickets : new Ticket[Math.max(4, tickets.length * 2)];
+        int count = 0;
+        for (int i = head; i < tail; i++) {
+            if (tickets[i] != null) {
+                tickets[i].manifestIndex = count;
+                target[count++] = tickets[i];
+            }
+        }
+        for (int i = count; i < tail && target == tickets; i++) {
+            tickets[i] = null;
+        }
+        tickets = target;
+        head = 0;
+        tail = count;
+    }
+
+    // Iterates the tickets in booking order
+    @Override
+    public Iterator<Ticket> iterator() {
+        return new Iterator<Ticket>() {
+            private int next = advance(head);
+
+            private int advance(int index) {
+                while (index < tail && tickets[index] == null) {
+                    index++;
+                }
+                return index;
+            }
+
+            @Override
+            public boolean hasNext() {
+                return next < tail;
+            }
+
+            @Override
+            public Ticket next() {
+                if (next >= tail) {
+                    throw new NoSuchElementException();
+                }
+                Ticket ticket = tickets[next];
+                next = advance(next + 1);
+                return ticket;
+            }
+        };
+    }
+}
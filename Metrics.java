@@ -0,0 +1,270 @@
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+import javax.management.Attribute;
+import javax.management.AttributeList;
+import javax.management.AttributeNotFoundException;
+import javax.management.DynamicMBean;
+import javax.management.JMException;
+import javax.management.MBeanAttributeInfo;
+import javax.management.MBeanInfo;
+import javax.management.MBeanOperationInfo;
+import javax.management.ObjectName;
+
+// Registry of counters, latency histograms and gauges for the booking system.
+//
+// Metrics are off unless the JVM is started with -Dflight.metrics=true. ENABLED is a static final, so the JIT
+// folds every "if (Metrics.ENABLED)" guard and a disabled build pays nothing on the hot paths. When enabled,
+// the registry is published over JMX as flight:type=Metrics and report() renders it as text.
+public class Metrics {
+    public static final boolean ENABLED = Boolean.getBoolean("flight.metrics"); // Read once at startup
+
+    private static final Map<String, Object> registry = new LinkedHashMap<>(); // Metrics by name, in registration order
+
+    // Latencies in nanoseconds
+    public static final Histogram BOOK = histogram("book.latency");
+    public static final Histogram CANCEL = histogram("cancel.latency");
+    public static final Histogram PASSENGER_LOOKUP = histogram("passenger.lookup.latency");
+    public static final Histogram SEARCH = histogram("search.latency");
+    public static final Histogram SNAPSHOT_LOAD = histogram("snapshot.load.latency");
+    public static final Histogram SNAPSHOT_SAVE = histogram("snapshot.save.latency");
+    public static final Histogram PARTITION_LOAD = histogram("partition.load.latency");
+
+    public static final Histogram GROUP_COMMIT_RECORDS = histogram("journal.group.records"); // Records made durable per fsync of the journal writer
+
+    public static final Counter BOOKINGS_CONFIRMED = counter("bookings.confirmed");
+    public static final Counter BOOKINGS_WAITLISTED = counter("bookings.waitlisted");
+    public static final Counter CANCELLATIONS = counter("cancellations");
+    public static final Counter PROMOTIONS = counter("waitlist.promotions");
+    public static final Counter PARTITION_EVICTIONS = counter("partition.evictions");
+    public static final Counter HOLDS_EXPIRED = counter("holds.expired");
+    public static final Counter EVENTS_DROPPED = counter("events.dropped"); // Events overwritten before a subscriber reached them
+
+    static {
+        gauge("seats.confirmed", () -> sumColumn(FlightInventory.CONFIRMED));
+        gauge("waitlist.depth", () -> sumColumn(FlightInventory.WAITLIST));
+        gauge("inventory.size", () -> AnnualFlightScheduler.inventory.size());
+        gauge("holds.active", () -> Main.afs == null ? 0 : Main.afs.holds.size());
+        gauge("events.lag", () -> AnnualFlightScheduler.events.getMaxLag());
+        gauge("partitions.loaded", () -> AnnualFlightScheduler.partitions == null ? 0 : AnnualFlightScheduler.partitions.getLoadedCount());
+        if (ENABLED) {
+            try {
+                ManagementFactory.getPlatformMBeanServer().registerMBean(new MetricsMBean(), new ObjectName("flight:type=Metrics"));
+            } catch (JMException e) {
+                System.err.println("Failed to register metrics MBean: " + e.getMessage());
+            }
+        }
+    }
+
+    // Monotonic count; LongAdder keeps concurrent increments from contending
+    public static class Counter {
+        private final LongAdder value = new LongAdder();
+
+        public void increment() {
+            value.increment();
+        }
+
+        public void add(long amount) {
+            value.add(amount);
+        }
+
+        public long get() {
+            return value.sum();
+        }
+    }
+
+    // Log-linear histogram in the style of HdrHistogram: values below 2^SUB_BITS get a bucket each, and every
+    // power of two above that is split into 2^SUB_BITS buckets, so any recorded value is off by at most 1/32
+    public static class Histogram {
+        private static final int SUB_BITS = 5;
+        private static final int SUB_COUNT = 1 << SUB_BITS;
+        private static final int BUCKETS = SUB_COUNT + (63 - SUB_BITS) * SUB_COUNT;
+
+        private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+        private final LongAdder count = new LongAdder();
+        private final LongAdder sum = new LongAdder();
+        private final AtomicLong max = new AtomicLong();
+
+        public void record(long value) {
+            if (value < 0) {
+                value = 0;
+            }
+            counts.incrementAndGet(bucketOf(value));
+            count.increment();
+            sum.add(value);
+            if (value > max.get()) {
+                max.accumulateAndGet(value, Math::max);
+            }
+        }
+
+        public long getCount() {
+            return count.sum();
+        }
+
+        public long getMax() {
+            return max.get();
+        }
+
+        public double getMean() {
+            long n = count.sum();
+            return n == 0 ? 0 : (double) sum.sum() / n;
+        }
+
+        // Returns the highest value of the bucket holding the given percentile (0-100), or 0 if nothing was recorded
+        public long getPercentile(double percentile) {
+            long n = count.sum();
+            if (n == 0) {
+                return 0;
+            }
+            long rank = Math.max(1, (long) Math.ceil(percentile / 100 * n));
+            long seen = 0;
+            for (int bucket = 0; bucket < BUCKETS; bucket++) {
+                seen += counts.get(bucket);
+                if (seen >= rank) {
+                    return Math.min(highestValueOf(bucket), getMax());
+                }
+            }
+            return getMax();
+        }
+
+        private static int bucketOf(long value) {
+            if (value < SUB_COUNT) {
+                return (int) value;
+            }
+            int exponent = 63 - Long.numberOfLeadingZeros(value); // At least SUB_BITS
+            int shift = exponent - SUB_BITS;
+            return SUB_COUNT + shift * SUB_COUNT + (int) (value >>> shift) - SUB_COUNT;
+        }
+
+        private static long highestValueOf(int bucket) {
+            if (bucket < SUB_COUNT) {
+                return bucket;
+            }
+            int shift = (bucket - SUB_COUNT) / SUB_COUNT;
+            long mantissa = SUB_COUNT + (bucket - SUB_COUNT) % SUB_COUNT;
+            return ((mantissa + 1) << shift) - 1;
+        }
+    }
+
+    public static Counter counter(String name) {
+        Counter counter = new Counter();
+        register(name, counter);
+        return counter;
+    }
+
+    public static Histogram histogram(String name) {
+        Histogram histogram = new Histogram();
+        register(name, histogram);
+        return histogram;
+    }
+
+    // Registers a value that is computed whenever the metrics are read
+    public static void gauge(String name, LongSupplier gauge) {
+        register(name, gauge);
+    }
+
+    private static synchronized void register(String name, Object metric) {
+        if (registry.putIfAbsent(name, metric) != null) {
+            throw new IllegalArgumentException("Metric already registered: " + name);
+        }
+    }
+
+    // Renders every metric, one per line
+    public static String report() {
+        StringBuilder sb = new StringBuilder();
+        for (Map.Entry<String, Object> entry : snapshot().entrySet()) {
+            sb.append(entry.getKey()).append(' ').append(entry.getValue()).append('\n');
+        }
+        return sb.toString();
+    }
+
+    // Returns the current value of every metric; histograms expand into count, mean, percentiles and max
+    static Map<String, Object> snapshot() {
+        Map<String, Object> metrics;
+        synchronized (Metrics.class) {
+            metrics = new LinkedHashMap<>(registry);
+        }
+        Map<String, Object> values = new LinkedHashMap<>();
+        for (Map.Entry<String, Object> entry : metrics.entrySet()) {
+            String name = entry.getKey();
+            Object metric = entry.getValue();
+            if (metric instanceof Counter) {
+                values.put(name, ((Counter) metric).get());
+            } else if (metric instanceof Histogram) {
+                Histogram histogram = (Histogram) metric;
+                values.put(name + ".count", histogram.getCount());
+                values.put(name + ".mean", Math.round(histogram.getMean()));
+                values.put(name + ".p50", histogram.getPercentile(50));
+                values.put(name + ".p99", histogram.getPercentile(99));
+                values.put(name + ".p999", histogram.getPercentile(99.9));
+                values.put(name + ".max", histogram.getMax());
+            } else {
+                values.put(name, ((LongSupplier) metric).getAsLong());
+            }
+        }
+        return values;
+    }
+
+    private static long sumColumn(int column) {
+        FlightInventory inventory = AnnualFlightScheduler.inventory;
+        return inventory.sum(column, 0, inventory.size());
+    }
+
+    // Publishes the current metric values as read-only JMX attributes
+    private static class MetricsMBean implements DynamicMBean {
+        @Override
+        public Object getAttribute(String attribute) throws AttributeNotFoundException {
+            Object value = snapshot().get(attribute);
+            if (value == null) {
+                throw new AttributeNotFoundException(attribute);
+            }
+            return value;
+        }
+
+        @Override
+        public AttributeList getAttributes(String[] attributes) {
+            Map<String, Object> values = snapshot();
+            AttributeList list = new AttributeList();
+            for (String attribute : attributes) {
+                if (values.containsKey(attribute)) {
+                    list.add(new Attribute(attribute, values.get(attribute)));
+                }
+            }
+            return list;
+        }
+
+        @Override
+        public void setAttribute(Attribute attribute) throws AttributeNotFoundException {
+            throw new AttributeNotFoundException("Metrics are read-only: " + attribute.getName());
+        }
+
+        @Override
+        public AttributeList setAttributes(AttributeList attributes) {
+            return new AttributeList();
+        }
+
+        @Override
+        public Object invoke(String actionName, Object[] params, String[] signature) {
+            return actionName.equals("report") ? report() : null;
+        }
+
+        @Override
+        public MBeanInfo getMBeanInfo() {
+            List<MBeanAttributeInfo> attributes = new ArrayList<>();
+            for (Map.Entry<String, Object> entry : snapshot().entrySet()) {
+                attributes.add(new MBeanAttributeInfo(entry.getKey(), entry.getValue().getClass().getName(),
+                        entry.getKey(), true, false, false));
+            }
+            MBeanOperationInfo report = new MBeanOperationInfo("report", "All metrics as text", null,
+                    String.class.getName(), MBeanOperationInfo.INFO);
+            return new MBeanInfo(Metrics.class.getName(), "Flight booking metrics",
+                    attributes.toArray(new MBeanAttributeInfo[0]), null, new MBeanOperationInfo[] {report}, null);
+        }
+    }
+}
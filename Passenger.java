@@ -1,16 +1,18 @@
-import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 public class Passenger {
+    public static final int maxTickets = 5; // Maximum number of tickets a passenger may hold
 
-    private String passportNum; // Passenger's passport number
-    private String name; // Passenger's name
-    private ArrayList<Ticket> ticketsBucket; // List to store the passenger's tickets
+    private volatile String passportNum; // Passenger's passport number
+    private volatile String name; // Passenger's name
+    private final CopyOnWriteArrayList<Ticket> ticketsBucket; // Passenger's tickets; copy-on-write so flights can read it without locking
+    private boolean dropped; // Taken out of the scheduler's index by an eviction; guarded by this passenger's monitor
 
     public Passenger(String passportNum, String name){
         this.passportNum = passportNum;
         this.name = name;
-        ticketsBucket = new ArrayList<>();
+        ticketsBucket = new CopyOnWriteArrayList<>();
     }
 
     // Getters and setters for name and passport number
@@ -30,16 +32,68 @@ public class Passenger {
         this.passportNum = passportNum;
     }
 
-    // Adds a ticket to the passenger's ticket bucket
-    public void addTicketToBucket(Ticket ticket) {
-        // Check if the passenger has exceeded the maximum number of allowed tickets
-        if (ticketsBucket.size() < ticket.getFlight().maxSeats) { 
+    // Adds a ticket to the passenger's ticket bucket; returns false if the passenger already holds the maximum number of tickets,
+    // or was dropped from the index, in which case the indexed passenger with this passport must take the ticket
+    public synchronized boolean addTicketToBucket(Ticket ticket) {
+        if (dropped) {
+            return false;
+        }
+        // Canceled tickets leave the bucket (see removeTicket), so it holds at most maxTickets and every check is bounded
+        if (ticketsBucket.size() < maxTickets) {
             ticketsBucket.add(ticket);
-        } else {
-            System.err.println("Exceeded the maximum number of tickets!");
+            return true;
         }
+        System.err.println("Exceeded the maximum number of tickets!");
+        return false;
     }
-    
+
+    // Adds a ticket read from a snapshot; existing bookings are kept even above the ticket limit
+    synchronized void restoreTicket(Ticket ticket) {
+        ticketsBucket.add(ticket);
+    }
+
+    // Takes a canceled ticket out of the bucket, freeing its place under the ticket limit
+    synchronized void removeTicket(Ticket ticket) {
+        ticketsBucket.remove(ticket);
+    }
+
+    // Drops the tickets of flights whose partition was evicted; returns true if any were dropped
+    synchronized boolean dropDetachedTickets() {
+        return ticketsBucket.removeIf(ticket -> ticket.getFlight().detached);
+    }
+
+    // Marks a passenger an eviction left without tickets as dropped; returns false if it has tickets again
+    synchronized boolean drop() {
+        if (!ticketsBucket.isEmpty()) {
+            return false;
+        }
+        dropped = true;
+        return true;
+    }
+
+    synchronized boolean isDropped() {
+        return dropped;
+    }
+
+    // Moves some of another passenger's tickets to this one; used when a replayed edit renames part of a passenger
+    synchronized void takeTickets(Passenger other, List<Ticket> tickets) {
+        for (Ticket ticket : tickets) {
+            ticket.setPassenger(this);
+            ticketsBucket.add(ticket);
+        }
+        other.ticketsBucket.removeAll(tickets);
+    }
+
+    // Returns this passenger's confirmed or waitlisted ticket for a flight, or null
+    public Ticket findTicket(Flight flight) {
+        for (Ticket ticket : ticketsBucket) {
+            if (ticket.getFlight() == flight && ticket.getStatus() != Ticket.Status.CANCELED) {
+                return ticket;
+            }
+        }
+        return null;
+    }
+
     // Returns the list of tickets for this passenger
     public List<Ticket> getTickets() {
         return ticketsBucket;
@@ -51,24 +105,29 @@ public class Passenger {
         if (ticketsBucket.isEmpty()) {
             System.out.println("You haven't booked any flights yet.");
         } else {
-            for (int i = 0; i < ticketsBucket.size(); i++) {
-                String flightID = ticketsBucket.get(i).getFlight().flightID;
-                String ticketStatus = ticketsBucket.get(i).getStatus();
-                System.out.println("Flight ID: " + flightID
-                        + "\nTicket Status: " + ticketStatus);
+            // Each ticket is read under its flight's lock, so a promotion or cancellation running meanwhile is seen
+            // either entirely or not at all
+            for (Ticket ticket : ticketsBucket.toArray(new Ticket[0])) {
+                Flight.TicketState state = ticket.getFlight().getTicketState(ticket);
+                if (state.status == null) {
+                    continue;
+                }
+                System.out.println("Flight ID: " + ticket.getFlight().flightID
+                        + "\nTicket Status: " + state.status
+                        + (state.seat >= 0 ? "\nSeat: " + (state.seat + 1) : "")
+                        + (state.waitlistPosition > 0 ? "\nWaiting list position: " + state.waitlistPosition : ""));
             }
         }
     }
 
     // Edits the passenger's name and passport number
-    public void editPassengerDetails(String newName, String newPassportNumber){
+    public synchronized void editPassengerDetails(String newName, String newPassportNumber){
         if(newName != null && !newName.isEmpty()){
             this.name = newName;
         }
         if(newPassportNumber != null && !newPassportNumber.isEmpty()){
             this.passportNum = newPassportNumber; 
         }   
-        System.out.println("Passenger details updated successfully.");
     }   
     
     // Overrides the toString() method to provide a formatted string representation
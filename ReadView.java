@@ -0,0 +1,145 @@
+import java.time.LocalDate;
+import java.lang.ref.Cleaner;
+import java.util.ArrayList;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+// Point-in-time view of every flight's seat counts for searches, which read it without taking any lock.
+//
+// Flights are multi-versioned: each change to a flight, once complete, is committed as a new FlightView with the
+// next global version and linked to the view it replaces. A read view takes the last committed version when it is
+// opened and sees, for every flight, the newest view at or below that version, so all flights are read as of the
+// same instant however long the reader takes and however many bookings run meanwhile.
+//
+// Commits take no lock beyond the flight's own: a commit links the new view in as pending, then draws its version
+// from an atomic counter and stamps it on the view. A reader that meets a pending view waits the few instructions
+// until it is stamped, since the version it gets may be at or below the reader's own; this is the only wait there is.
+//
+// Old versions are dropped once no open read view can need them: open views are registered, and every
+// FLOOR_INTERVAL commits the oldest registered version becomes the floor below which a flight keeps only one view.
+// Each flight trims its own chain to the floor when it commits. Views should be closed; one that is not stops
+// pinning its version once it is garbage collected.
+//
+// In the partitioned format a month that is evicted and reloaded while a view is open starts over with its
+// state as written back, which the view then sees.
+public class ReadView implements AutoCloseable {
+    static final int FLOOR_INTERVAL = 256; // Commits between two computations of the floor
+
+    static final long PENDING = Long.MAX_VALUE; // Version of a view linked in whose commit has not drawn one yet
+
+    private static final Cleaner cleaner = Cleaner.create();
+    private static final Set<Registration> openViews = ConcurrentHashMap.newKeySet(); // Views not closed yet
+    private static final AtomicLong lastVersion = new AtomicLong(); // Last version drawn by a commit
+    private static final AtomicLong pendingFloor = new AtomicLong(); // Floor being computed; a view opened below it must start over
+    private static final AtomicLong floor = new AtomicLong(); // Versions at or below this have no reader but the newest one
+
+    private final Registration registration = new Registration();
+    private final Cleaner.Cleanable cleanable;
+
+    // What openViews holds for a view; kept apart from the view so an unclosed view can still be collected
+    private static final class Registration implements Runnable {
+        volatile long version; // Version the view reads
+
+        @Override
+        public void run() {
+            openViews.remove(this);
+        }
+    }
+
+    private ReadView() {
+        cleanable = cleaner.register(this, registration);
+    }
+
+    // Opens a view of the last committed version; close it when done
+    public static ReadView open() {
+        ReadView view = new ReadView();
+        Registration registration = view.registration;
+        while (true) {
+            long version = lastVersion.get();
+            registration.version = version;
+            openViews.add(registration);
+            // A floor computed concurrently may have missed the registration; pendingFloor is written before the
+            // registered views are read, so a view it could have missed sees it here and retries with a newer version
+            if (pendingFloor.get() <= version) {
+                return view;
+            }
+            openViews.remove(registration);
+        }
+    }
+
+    public long getVersion() {
+        return registration.version;
+    }
+
+    // Returns the flight as of this view's version, or null if the flight did not exist yet
+    public FlightView of(Flight flight) {
+        long version = registration.version;
+        FlightView view = flight.view;
+        while (view != null) {
+            long viewVersion = view.version;
+            while (viewVersion == PENDING) {
+                Thread.onSpinWait(); // Committed but not stamped yet; the stamp decides whether this view sees it
+                viewVersion = view.version;
+            }
+            if (viewVersion <= version) {
+                return view;
+            }
+            view = view.prior;
+        }
+        return null;
+    }
+
+    // Returns the flights between two dates as of this view's version, in date order; consume it before closing the view
+    public Stream<FlightView> flights(LocalDate date1, LocalDate date2) {
+        if (date1.isAfter(date2)) {
+            return Stream.empty();
+        }
+        AnnualFlightScheduler.loadRange(date1, date2);
+        return AnnualFlightScheduler.flightsByDate.subMap(date1, true, date2, true).values().stream()
+                .flatMap(ArrayList::stream)
+                .map(this::of)
+                .filter(Objects::nonNull);
+    }
+
+    @Override
+    public void close() {
+        cleanable.clean();
+    }
+
+    // Publishes a flight's new view as the next version; the caller holds the flight's lock, which is all that
+    // orders the commits of one flight. The view is linked in before its version is drawn, so a reader that opens
+    // at that version or later finds it.
+    static void commit(Flight flight, FlightView view) {
+        view.version = PENDING;
+        view.prior = flight.view;
+        flight.view = view;
+        long version = lastVersion.incrementAndGet();
+        view.version = version;
+
+        // Keep the views newer than the floor and the newest one at or below it, which the oldest reader may need
+        long floorVersion = floor.get();
+        FlightView kept = view;
+        while (kept.prior != null && kept.version > floorVersion) {
+            kept = kept.prior;
+        }
+        kept.prior = null;
+
+        if (version % FLOOR_INTERVAL == 0) {
+            pendingFloor.accumulateAndGet(version, Math::max);
+            long oldest = version;
+            for (Registration reader : openViews) {
+                oldest = Math.min(oldest, reader.version);
+            }
+            // Commits computing floors concurrently may finish out of order; the floor only moves up
+            floor.accumulateAndGet(oldest, Math::max);
+        }
+    }
+
+    // Returns the number of open views
+    static int openCount() {
+        return openViews.size();
+    }
+}
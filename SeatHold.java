@@ -0,0 +1,46 @@
+// A seat reserved on a flight while a passenger checks out. It counts against the flight's capacity until it is
+// confirmed into a ticket, released, or expires at its deadline; the scheduler's timing wheel fires the expiry.
+public class SeatHold extends TimingWheel.Entry {
+    // Where a hold stands; every state but HELD is final
+    public enum Status {
+        HELD, CONFIRMED, RELEASED, EXPIRED
+    }
+
+    final long id; // Identifier given to the client, unique across restarts
+    final Flight flight; // The flight the seat is on
+    final SeatMap.Cabin cabin; // The cabin requested for the seat
+    final long deadline; // Time the hold expires, in epoch milliseconds
+    int seat = -1; // The reserved seat, or -1 if the seat map had none left; guarded by the flight's lock
+    volatile Status status = Status.HELD;
+
+    SeatHold(long id, Flight flight, SeatMap.Cabin cabin, long deadline) {
+        this.id = id;
+        this.flight = flight;
+        this.cabin = cabin;
+        this.deadline = deadline;
+    }
+
+    public long getId() {
+        return id;
+    }
+
+    public Flight getFlight() {
+        return flight;
+    }
+
+    public SeatMap.Cabin getCabin() {
+        return cabin;
+    }
+
+    public long getDeadline() {
+        return deadline;
+    }
+
+    public int getSeat() {
+        return seat;
+    }
+
+    public Status getStatus() {
+        return status;
+    }
+}
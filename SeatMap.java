@@ -0,0 +1,100 @@
+public class SeatMap {
+
+    // Cabins of the aircraft; business seats are numbered first, economy seats follow
+    public enum Cabin {
+        BUSINESS, ECONOMY
+    }
+
+    private final int businessSeats; // Number of seats in the business cabin
+    private final int capacity; // Total number of seats on the aircraft
+    private final long[] occupied; // One bit per seat, set when the seat is assigned
+    private int businessTaken; // Number of assigned business seats
+    private int economyTaken; // Number of assigned economy seats
+
+    public SeatMap(int economySeats, int businessSeats) {
+        if (economySeats < 0 || businessSeats < 0) {
+            throw new IllegalArgumentException("Invalid seat map size.");
+        }
+        this.businessSeats = businessSeats;
+        this.capacity = economySeats + businessSeats;
+        this.occupied = new long[(capacity + 63) >>> 6];
+    }
+
+    // Assigns the lowest free seat, preferring the given cabin; returns -1 if the aircraft is full
+    public int assign(Cabin preferred) {
+        int seat = preferred == Cabin.BUSINESS ? firstFree(0, businessSeats) : firstFree(businessSeats, capacity);
+        if (seat < 0) {
+            seat = preferred == Cabin.BUSINESS ? firstFree(businessSeats, capacity) : firstFree(0, businessSeats);
+        }
+        if (seat >= 0) {
+            occupy(seat);
+        }
+        return seat;
+    }
+
+    // Marks a specific seat as assigned; returns false if it is out of range or already taken
+    public boolean occupy(int seat) {
+        if (seat < 0 || seat >= capacity || isTaken(seat)) {
+            return false;
+        }
+        occupied[seat >>> 6] |= 1L << seat;
+        if (seat < businessSeats) {
+            businessTaken++;
+        } else {
+            economyTaken++;
+        }
+        return true;
+    }
+
+    // Frees a previously assigned seat
+    public void release(int seat) {
+        if (seat < 0 || seat >= capacity || !isTaken(seat)) {
+            return;
+        }
+        occupied[seat >>> 6] &= ~(1L << seat);
+        if (seat < businessSeats) {
+            businessTaken--;
+        } else {
+            economyTaken--;
+        }
+    }
+
+    public boolean isTaken(int seat) {
+        return (occupied[seat >>> 6] & (1L << seat)) != 0;
+    }
+
+    public Cabin cabinOf(int seat) {
+        return seat < businessSeats ? Cabin.BUSINESS : Cabin.ECONOMY;
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    public int getSeats(Cabin cabin) {
+        return cabin == Cabin.BUSINESS ? businessSeats : capacity - businessSeats;
+    }
+
+    public int getFreeSeats(Cabin cabin) {
+        return cabin == Cabin.BUSINESS ? businessSeats - businessTaken : capacity - businessSeats - economyTaken;
+    }
+
+    // Finds the lowest free seat in [from, to) by scanning whole 64-seat words
+    private int firstFree(int from, int to) {
+        if (from >= to) {
+            return -1;
+        }
+        int wordIndex = from >>> 6;
+        long word = ~occupied[wordIndex] & (-1L << from);
+        while (true) {
+            if (word != 0) {
+                int seat = (wordIndex << 6) + Long.numberOfTrailingZeros(word);
+                return seat < to ? seat : -1;
+            }
+            if (++wordIndex >= occupied.length) {
+                return -1;
+            }
+            word = ~occupied[wordIndex];
+        }
+    }
+}
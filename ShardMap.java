@@ -0,0 +1,171 @@
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+// Assigns the schedule to shards by date: shard i owns the days from its first date up to the next shard's first date,
+// the first shard also owns every earlier day and the last shard every later one. Each shard is a BookingServer process
+// with its own snapshot and journal; ShardRouter sends it the requests for its days.
+//
+// A map is saved as one line per shard, in date order: first date, a tab, and host:port.
+public class ShardMap {
+    static final String FILE_NAME = "shards.txt"; // Name of the map in a sharded data directory
+
+    private final long[] firstDays; // Epoch day each shard starts at, ascending
+    private final InetSocketAddress[] addresses; // Where each shard's server listens
+
+    ShardMap(long[] firstDays, InetSocketAddress[] addresses) {
+        if (firstDays.length == 0 || firstDays.length != addresses.length) {
+            throw new IllegalArgumentException("A shard map needs one address per shard and at least one shard");
+        }
+        for (int i = 1; i < firstDays.length; i++) {
+            if (firstDays[i] <= firstDays[i - 1]) {
+                throw new IllegalArgumentException("Shard " + i + " does not start after shard " + (i - 1));
+            }
+        }
+        this.firstDays = firstDays;
+        this.addresses = addresses;
+    }
+
+    // Splits the days from first to last into shards of equal length, served on consecutive local ports
+    public static ShardMap split(LocalDate first, LocalDate last, int shards, int basePort) {
+        long days = last.toEpochDay() - first.toEpochDay() + 1;
+        if (shards < 1 || shards > days) {
+            throw new IllegalArgumentException("Cannot split " + days + " days into " + shards + " shards");
+        }
+        long[] firstDays = new long[shards];
+        InetSocketAddress[] addresses = new InetSocketAddress[shards];
+        for (int i = 0; i < shards; i++) {
+            firstDays[i] = first.toEpochDay() + days * i / shards;
+            addresses[i] = new InetSocketAddress("127.0.0.1", basePort + i);
+        }
+        return new ShardMap(firstDays, addresses);
+    }
+
+    public static ShardMap read(Path file) throws IOException {
+        List<String> lines = new ArrayList<>();
+        for (String line : Files.readAllLines(file, StandardCharsets.UTF_8)) {
+            if (!line.isBlank()) {
+                lines.add(line);
+            }
+        }
+        long[] firstDays = new long[lines.size()];
+        InetSocketAddress[] addresses = new InetSocketAddress[lines.size()];
+        for (int i = 0; i < lines.size(); i++) {
+            String[] fields = lines.get(i).split("\t");
+            int colon = fields[1].lastIndexOf(':');
+            firstDays[i] = LocalDate.parse(fields[0], AnnualFlightScheduler.formatter).toEpochDay();
+            addresses[i] = new InetSocketAddress(fields[1].substring(0, colon), Integer.parseInt(fields[1].substring(colon + 1)));
+        }
+        return new ShardMap(firstDays, addresses);
+    }
+
+    public void write(Path file) throws IOException {
+        try (BufferedWriter writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            for (int i = 0; i < firstDays.length; i++) {
+                writer.write(LocalDate.ofEpochDay(firstDays[i]) + "\t" + addresses[i].getHostString() + ":" + addresses[i].getPort() + "\n");
+            }
+        }
+    }
+
+    public int size() {
+        return firstDays.length;
+    }
+
+    public InetSocketAddress getAddress(int shard) {
+        return addresses[shard];
+    }
+
+    public LocalDate getFirstDate(int shard) {
+        return LocalDate.ofEpochDay(firstDays[shard]);
+    }
+
+    // Returns the shard that owns a date
+    public int shardOf(LocalDate date) {
+        int index = Arrays.binarySearch(firstDays, date.toEpochDay());
+        return index >= 0 ? index : Math.max(-index - 2, 0);
+    }
+
+    // Returns the shard that owns a flight, from the date its ID ends with, or -1 if the ID has none
+    public int shardOf(String flightID) {
+        LocalDate date = FlightPartitions.dateOf(flightID);
+        return date == null ? -1 : shardOf(date);
+    }
+
+    // Writes each shard's flights of a CSV snapshot to shard-<i>.csv in a directory, keeping the header without its
+    // journal sequence number since every shard starts a journal of its own. Apply the snapshot's journal first
+    // (a checkpoint does) or its records are lost.
+    public void splitCsv(Path csvFile, Path directory) throws IOException {
+        Files.createDirectories(directory);
+        BufferedWriter[] writers = new BufferedWriter[size()];
+        try (BufferedReader reader = Files.newBufferedReader(csvFile, StandardCharsets.UTF_8)) {
+            String header = reader.readLine();
+            if (header == null) {
+                throw new IOException(csvFile + " is empty");
+            }
+            int marker = header.indexOf(AnnualFlightScheduler.SEQ_MARKER);
+            if (marker >= 0) {
+                header = header.substring(0, marker);
+            }
+            for (int i = 0; i < writers.length; i++) {
+                writers[i] = Files.newBufferedWriter(shardFile(directory, i, ".csv"), StandardCharsets.UTF_8);
+                writers[i].write(header);
+                writers[i].write('\n');
+            }
+            String line;
+            while ((line = reader.readLine()) != null) {
+                int start = line.indexOf(',') + 1; // The date is the second column
+                int end = line.indexOf(',', start);
+                if (start == 0 || end < 0) {
+                    continue;
+                }
+                BufferedWriter writer = writers[shardOf(LocalDate.parse(line.substring(start, end), AnnualFlightScheduler.formatter))];
+                writer.write(line);
+                writer.write('\n');
+            }
+        } finally {
+            for (BufferedWriter writer : writers) {
+                if (writer != null) {
+                    writer.close();
+                }
+            }
+        }
+    }
+
+    // Returns the first and last flight dates of a CSV snapshot, or null if it has no flights
+    static LocalDate[] dateRange(Path csvFile) throws IOException {
+        LocalDate first = null;
+        LocalDate last = null;
+        try (BufferedReader reader = Files.newBufferedReader(csvFile, StandardCharsets.UTF_8)) {
+            reader.readLine(); // Header
+            String line;
+            while ((line = reader.readLine()) != null) {
+                int start = line.indexOf(',') + 1;
+                int end = line.indexOf(',', start);
+                if (start == 0 || end < 0) {
+                    continue;
+                }
+                LocalDate date = LocalDate.parse(line.substring(start, end), AnnualFlightScheduler.formatter);
+                if (first == null || date.isBefore(first)) {
+                    first = date;
+                }
+                if (last == null || date.isAfter(last)) {
+                    last = date;
+                }
+            }
+        }
+        return first == null ? null : new LocalDate[]{first, last};
+    }
+
+    // Returns the file of one shard in a sharded data directory
+    static Path shardFile(Path directory, int shard, String suffix) {
+        return directory.resolve("shard-" + shard + suffix);
+    }
+}
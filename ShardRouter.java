@@ -0,0 +1,436 @@
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.InterruptedIOException;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+
+// Serves the BookingServer protocol in front of shard processes that each own a range of dates (see ShardMap).
+//
+// Requests for one flight (BOOK, CANCEL, HOLD) go to the shard that owns the date at the end of its ID. A hold ID
+// given to clients carries its shard: shard hold ID * shards + shard, so CONFIRM and RELEASE go straight back to it.
+// SEARCH goes to the shards its date range overlaps, in parallel, and their rows are concatenated in shard order,
+// which is date order. STATUS and EDIT go to every shard, since a passenger may have tickets on any of them; METRICS
+// does too and prefixes each row with its shard.
+//
+// Every shard keeps its own passengers, so the ticket limit applies per shard, and an EDIT is applied shard by shard
+// rather than atomically: if the new passport number is taken on one shard, the others may have changed.
+public class ShardRouter extends BookingServer {
+    static final int DEFAULT_BASE_PORT = 7100; // Port of the first shard when the router starts them
+    static final long STARTUP_TIMEOUT_MS = 120_000; // Time a shard process gets to load its snapshot and listen
+
+    private final ShardMap shardMap;
+    private final Shard[] shards;
+    private final ExecutorService fanOut = newConnectionExecutor("shard-fan-out"); // Runs the calls to several shards at once
+
+    public ShardRouter(ShardMap shardMap, int port) throws IOException {
+        super(null, port);
+        this.shardMap = shardMap;
+        this.shards = new Shard[shardMap.size()];
+        for (int i = 0; i < shards.length; i++) {
+            shards[i] = new Shard(shardMap.getAddress(i));
+        }
+    }
+
+    // Starts the shards of a data directory and routes to them:
+    // java ShardRouter <port> <directory> [flights.csv flights.journal shards [basePort]]
+    // With a CSV file, the directory is first given its shard map and one snapshot per shard, split by date. The CSV is
+    // opened with its journal and checkpointed first, so the split has the bookings made since its last snapshot; holds
+    // stay in the source journal and are not carried to the shards.
+    // Every shard runs as a BookingServer child process of this one, with the same class path and flight.* properties,
+    // and writes its snapshot when the router is stopped.
+    public static void main(String[] args) throws IOException {
+        if (args.length != 2 && args.length != 5 && args.length != 6) {
+            System.err.println("Usage: java ShardRouter <port> <directory> [<csv file> <journal file> <shards> [<base port>]]");
+            return;
+        }
+        int port = Integer.parseInt(args[0]);
+        Path directory = Paths.get(args[1]);
+        ShardMap shardMap;
+        if (args.length > 2) {
+            Path csvFile = Paths.get(args[2]);
+            Main.afs = new AnnualFlightScheduler(args[2], args[3]); // Replays the journal onto the snapshot
+            if (!Main.afs.close()) {
+                System.err.println("Could not checkpoint " + csvFile + " with " + args[3] + "; not splitting it");
+                return;
+            }
+            LocalDate[] range = ShardMap.dateRange(csvFile);
+            if (range == null) {
+                System.err.println(csvFile + " has no flights");
+                return;
+            }
+            int basePort = args.length > 5 ? Integer.parseInt(args[5]) : DEFAULT_BASE_PORT;
+            shardMap = ShardMap.split(range[0], range[1], Integer.parseInt(args[4]), basePort);
+            shardMap.splitCsv(csvFile, directory);
+            shardMap.write(directory.resolve(ShardMap.FILE_NAME));
+            System.out.println("Split " + csvFile + " into " + shardMap.size() + " shards in " + directory);
+        } else {
+            shardMap = ShardMap.read(directory.resolve(ShardMap.FILE_NAME));
+        }
+
+        List<Process> processes = startShards(shardMap, directory);
+        ShardRouter router = new ShardRouter(shardMap, port);
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            router.close();
+            stopShards(processes);
+        }));
+        System.out.println("Shard router listening on port " + router.getPort() + " for " + shardMap.size() + " shards");
+        router.serve();
+    }
+
+    // Starts one BookingServer process per shard and waits until each one accepts connections
+    static List<Process> startShards(ShardMap shardMap, Path directory) throws IOException {
+        String java = Paths.get(System.getProperty("java.home"), "bin", "java").toString();
+        List<Process> processes = new ArrayList<>();
+        try {
+            for (int i = 0; i < shardMap.size(); i++) {
+                List<String> command = new ArrayList<>();
+                command.add(java);
+                for (Map.Entry<Object, Object> property : System.getProperties().entrySet()) {
+                    if (property.getKey().toString().startsWith("flight.")) {
+                        command.add("-D" + property.getKey() + "=" + property.getValue());
+                    }
+                }
+                command.add("-cp");
+                command.add(System.getProperty("java.class.path"));
+                command.add("BookingServer");
+                command.add(Integer.toString(shardMap.getAddress(i).getPort()));
+                command.add(ShardMap.shardFile(directory, i, ".csv").toString());
+                command.add(ShardMap.shardFile(directory, i, ".journal").toString());
+                File log = ShardMap.shardFile(directory, i, ".log").toFile();
+                processes.add(new ProcessBuilder(command).redirectErrorStream(true)
+                        .redirectOutput(ProcessBuilder.Redirect.appendTo(log)).start());
+            }
+            for (int i = 0; i < processes.size(); i++) {
+                awaitShard(shardMap.getAddress(i), processes.get(i), i);
+            }
+        } catch (IOException e) {
+            stopShards(processes);
+            throw e;
+        }
+        return processes;
+    }
+
+    private static void awaitShard(InetSocketAddress address, Process process, int shard) throws IOException {
+        long deadline = System.currentTimeMillis() + STARTUP_TIMEOUT_MS;
+        while (true) {
+            try (Socket socket = new Socket()) {
+                socket.connect(address, 1000);
+                return;
+            } catch (IOException e) {
+                if (!process.isAlive()) {
+                    throw new IOException("Shard " + shard + " exited with code " + process.exitValue() + "; see its log");
+                }
+                if (System.currentTimeMillis() > deadline) {
+                    throw new IOException("Shard " + shard + " did not start listening on " + address);
+                }
+                try {
+                    Thread.sleep(50);
+                } catch (InterruptedException interrupted) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException("Interrupted while waiting for shard " + shard);
+                }
+            }
+        }
+    }
+
+    // Asks every shard process to stop, which makes it write its snapshot, and waits for them
+    static void stopShards(List<Process> processes) {
+        for (Process process : processes) {
+            process.destroy();
+        }
+        for (Process process : processes) {
+            try {
+                if (!process.waitFor(60, TimeUnit.SECONDS)) {
+                    System.err.println("A shard did not stop in time and was killed");
+                    process.destroyForcibly();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        super.close();
+        fanOut.shutdownNow();
+        for (Shard shard : shards) {
+            shard.close();
+        }
+    }
+
+    public ShardMap getShardMap() {
+        return shardMap;
+    }
+
+    // Routes one request line and returns the complete response, ending in a newline
+    @Override
+    String handle(String line) {
+        String[] fields = line.split("\t", -1);
+        try {
+            switch (fields[0]) {
+                case "SEARCH":
+                    return search(line, fields);
+                case "BOOK":
+                case "CANCEL":
+                    requireFields(fields, fields[0].equals("BOOK") ? 4 : 3);
+                    return toFlight(line, fields);
+                case "HOLD": {
+                    requireFields(fields, 2);
+                    int shard = shardMap.shardOf(fields[1]);
+                    if (shard < 0) {
+                        return "ERR NOT_FOUND\n";
+                    }
+                    String response = join(shards[shard].call(line));
+                    if (!response.startsWith("OK ")) {
+                        return response;
+                    }
+                    int space = response.indexOf(' ', 3);
+                    long holdID = Long.parseLong(response.substring(3, space));
+                    return "OK " + (holdID * shards.length + shard) + response.substring(space);
+                }
+                case "CONFIRM":
+                case "RELEASE": {
+                    requireFields(fields, fields[0].equals("CONFIRM") ? 4 : 2);
+                    long holdID = Long.parseLong(fields[1]);
+                    if (holdID < 0) {
+                        return "ERR NOT_HELD\n";
+                    }
+                    fields[1] = Long.toString(holdID / shards.length);
+                    return join(shards[(int) (holdID % shards.length)].call(String.join("\t", fields)));
+                }
+                case "STATUS":
+                    requireFields(fields, 2);
+                    return passengerRows(callAll(line, 0, shards.length - 1));
+                case "EDIT":
+                    requireFields(fields, 4);
+                    return edit(callAll(line, 0, shards.length - 1));
+                case "METRICS": {
+                    List<List<String>> responses = callAll(line, 0, shards.length - 1);
+                    List<String> rows = new ArrayList<>();
+                    for (int i = 0; i < responses.size(); i++) {
+                        for (String row : responses.get(i).subList(1, responses.get(i).size())) {
+                            rows.add("shard" + i + "." + row);
+                        }
+                    }
+                    return rows(rows);
+                }
+                default:
+                    return "ERR UNKNOWN_COMMAND\n";
+            }
+        } catch (IllegalArgumentException | DateTimeParseException e) {
+            return "ERR BAD_REQUEST " + e.getMessage().replace('\n', ' ') + "\n";
+        } catch (UncheckedIOException e) {
+            return "ERR SHARD_UNAVAILABLE\n";
+        }
+    }
+
+    private String toFlight(String line, String[] fields) {
+        int shard = shardMap.shardOf(fields[1]);
+        return shard < 0 ? "ERR NOT_FOUND\n" : join(shards[shard].call(line));
+    }
+
+    private String search(String line, String[] fields) {
+        requireFields(fields, 3);
+        LocalDate from = LocalDate.parse(fields[1], AnnualFlightScheduler.formatter);
+        LocalDate to = LocalDate.parse(fields[2], AnnualFlightScheduler.formatter);
+        if (from.isAfter(to)) {
+            return rows(List.of());
+        }
+        List<List<String>> responses = callAll(line, shardMap.shardOf(from), shardMap.shardOf(to));
+        List<String> rows = new ArrayList<>();
+        for (List<String> response : responses) {
+            if (!response.get(0).startsWith("OK ")) {
+                return join(response);
+            }
+            rows.addAll(response.subList(1, response.size()));
+        }
+        return rows(rows);
+    }
+
+    // Merges the STATUS rows of every shard; the passenger is unknown only if no shard knows them
+    private static String passengerRows(List<List<String>> responses) {
+        List<String> rows = new ArrayList<>();
+        boolean found = false;
+        for (List<String> response : responses) {
+            if (response.get(0).startsWith("OK ")) {
+                found = true;
+                rows.addAll(response.subList(1, response.size()));
+            } else if (!response.get(0).equals("ERR NOT_FOUND")) {
+                return join(response);
+            }
+        }
+        return found ? rows(rows) : "ERR NOT_FOUND\n";
+    }
+
+    // Combines the EDIT results of every shard: a taken passport wins over success, success over an unknown passenger
+    private static String edit(List<List<String>> responses) {
+        String result = "ERR NOT_FOUND";
+        for (List<String> response : responses) {
+            String status = response.get(0);
+            if (!status.equals("OK") && !status.equals("ERR NOT_FOUND")) {
+                return join(response);
+            }
+            if (status.equals("OK")) {
+                result = status;
+            }
+        }
+        return result + "\n";
+    }
+
+    // Sends a request to shards first..last at once and returns their responses in shard order
+    private List<List<String>> callAll(String line, int first, int last) {
+        if (first == last) {
+            return List.of(shards[first].call(line));
+        }
+        List<CompletableFuture<List<String>>> calls = new ArrayList<>();
+        for (int i = first; i <= last; i++) {
+            Shard shard = shards[i];
+            calls.add(CompletableFuture.supplyAsync(() -> shard.call(line), fanOut));
+        }
+        List<List<String>> responses = new ArrayList<>(calls.size());
+        try {
+            for (CompletableFuture<List<String>> call : calls) {
+                responses.add(call.join());
+            }
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof UncheckedIOException) {
+                throw (UncheckedIOException) e.getCause();
+            }
+            throw e;
+        }
+        return responses;
+    }
+
+    private static String join(List<String> response) {
+        StringBuilder sb = new StringBuilder();
+        for (String line : response) {
+            sb.append(line).append('\n');
+        }
+        return sb.toString();
+    }
+
+    // Connections to one shard. Each request borrows an idle connection or opens one, so concurrent requests to the
+    // same shard do not wait for each other.
+    static class Shard {
+        private final InetSocketAddress address;
+        private final ConcurrentLinkedQueue<Connection> idle = new ConcurrentLinkedQueue<>();
+
+        Shard(InetSocketAddress address) {
+            this.address = address;
+        }
+
+        // Sends one request and returns its response: the status line followed by its rows
+        List<String> call(String line) {
+            Connection connection = idle.poll();
+            while (connection != null && connection.isStale()) {
+                connection.close();
+                connection = idle.poll();
+            }
+            try {
+                if (connection == null) {
+                    connection = new Connection(address);
+                }
+                List<String> response = connection.call(line);
+                idle.add(connection);
+                return response;
+            } catch (IOException e) {
+                if (connection != null) {
+                    connection.close();
+                }
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        void close() {
+            Connection connection;
+            while ((connection = idle.poll()) != null) {
+                connection.close();
+            }
+        }
+    }
+
+    private static class Connection {
+        private final Socket socket;
+        private final BufferedReader in;
+        private final Writer out;
+        private long lastUsed = System.currentTimeMillis();
+
+        Connection(InetSocketAddress address) throws IOException {
+            socket = new Socket();
+            socket.connect(address, 5000);
+            socket.setTcpNoDelay(true);
+            in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+            out = new BufferedWriter(new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8));
+        }
+
+        // A shard closes connections idle for IDLE_TIMEOUT_MS; one idle for half of that is not reused
+        boolean isStale() {
+            return System.currentTimeMillis() - lastUsed > IDLE_TIMEOUT_MS / 2;
+        }
+
+        List<String> call(String line) throws IOException {
+            out.write(line);
+            out.write('\n');
+            out.flush();
+            List<String> response = new ArrayList<>();
+            String status = in.readLine();
+            if (status == null) {
+                throw new IOException("Shard closed the connection");
+            }
+            response.add(status);
+            if (isRowCount(status)) {
+                for (int rows = Integer.parseInt(status.substring(3)); rows > 0; rows--) {
+                    String row = in.readLine();
+                    if (row == null) {
+                        throw new IOException("Shard closed the connection");
+                    }
+                    response.add(row);
+                }
+            }
+            lastUsed = System.currentTimeMillis();
+            return response;
+        }
+
+        // Whether a status line announces rows ("OK 3"), unlike "OK CONFIRMED" or the "OK <id> <seat> <deadline>" of a hold
+        private static boolean isRowCount(String status) {
+            if (!status.startsWith("OK ") || status.length() == 3) {
+                return false;
+            }
+            for (int i = 3; i < status.length(); i++) {
+                if (!Character.isDigit(status.charAt(i))) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        void close() {
+            try {
+                socket.close();
+            } catch (IOException e) {
+                // Nothing left to release
+            }
+        }
+    }
+}
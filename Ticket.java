@@ -1,16 +1,47 @@
 public class Ticket {
+    // Where a ticket stands on its flight's manifest
+    public enum Status {
+        CONFIRMED("confirmed"), WAITING_LIST("waiting list"), CANCELED("canceled");
+
+        private final String label; // Text shown to passengers
+
+        Status(String label) {
+            this.label = label;
+        }
+
+        @Override
+        public String toString() {
+            return label;
+        }
+    }
+
+    // Loyalty programme tier the passenger booked with; higher tiers are promoted first under the priority waitlist policy
+    public enum LoyaltyTier {
+        NONE, SILVER, GOLD, PLATINUM
+    }
 
     Flight flight; // The flight associated with this ticket
     Passenger passenger; // The passenger holding this ticket
-    private String status; // The status of the ticket (e.g., "confirmed", "waiting list", "canceled")
+    private volatile Status status; // The status of the ticket
+    private SeatMap.Cabin cabin; // The cabin requested for this ticket
+    private LoyaltyTier loyaltyTier = LoyaltyTier.NONE; // The passenger's tier when booking; fixed while waitlisted
+    private volatile int seat; // The assigned seat number, or -1 while no seat is assigned
+    int manifestIndex; // Position of this ticket in the confirmed manifest or waitlist heap that holds it
+    int waitlistArrival; // Order in which this ticket joined its flight's waiting list
 
     public Ticket(Passenger passenger, Flight flight){
+        this(passenger, flight, SeatMap.Cabin.ECONOMY);
+    }
+
+    public Ticket(Passenger passenger, Flight flight, SeatMap.Cabin cabin){
         this.passenger = passenger;
         this.flight = flight;
+        this.cabin = cabin;
+        this.seat = -1;
     }
 
     // Getters and setters for status, passenger, and flight
-    public String getStatus() {
+    public Status getStatus() {
         return status;
     }
 
@@ -22,15 +53,39 @@ public class Ticket {
         return flight;
     }
 
+    public SeatMap.Cabin getCabin() {
+        return cabin;
+    }
+
+    public LoyaltyTier getLoyaltyTier() {
+        return loyaltyTier;
+    }
+
+    public int getSeat() {
+        return seat;
+    }
+
     public void setPassenger(Passenger passenger) {
         this.passenger = passenger;
     }
 
-    public void setStatus(String status) {
+    public void setStatus(Status status) {
         this.status = status;
     }
 
     public void setFlight(Flight flight) {
         this.flight = flight;
     }
+
+    public void setCabin(SeatMap.Cabin cabin) {
+        this.cabin = cabin;
+    }
+
+    public void setLoyaltyTier(LoyaltyTier loyaltyTier) {
+        this.loyaltyTier = loyaltyTier;
+    }
+
+    public void setSeat(int seat) {
+        this.seat = seat;
+    }
 }
\ No newline at end of file
@@ -0,0 +1,126 @@
+import java.util.ArrayList;
+import java.util.List;
+
+// Hierarchical timing wheel: LEVELS wheels of SLOTS buckets each, where a bucket of level l spans SLOTS^l ticks.
+// A timer goes into the lowest level whose span covers its distance from the current tick; when the clock reaches
+// the start of a higher-level bucket, that bucket is cascaded into the levels below. Adding and cancelling a timer
+// are O(1) (each bucket is a doubly linked list threaded through the entries), and advancing the clock by one tick
+// touches one bucket per level at most, so no scan over pending timers is ever needed.
+//
+// Timers further away than the whole wheel wait in the top level and are re-placed each time it wraps around.
+// Thread-safe: every method synchronizes on the wheel.
+public class TimingWheel<E extends TimingWheel.Entry> {
+    static final int LEVEL_BITS = 6;
+    static final int SLOTS = 1 << LEVEL_BITS; // Buckets per level
+    static final int LEVELS = 4; // With 100 ms ticks the wheel spans 64^4 ticks, about 19 days
+    private static final int SLOT_MASK = SLOTS - 1;
+    private static final long SPAN = 1L << (LEVEL_BITS * LEVELS); // Ticks covered by the whole wheel
+
+    private final long tickMillis; // Length of one tick
+    private final Entry[][] buckets = new Entry[LEVELS][SLOTS]; // Sentinel of each bucket's circular list
+    private long currentTick; // Last tick whose timers have been collected
+    private int size; // Number of pending timers
+
+    // A timer; subclasses carry what it is for
+    public static class Entry {
+        long expiryTick; // Tick at which the timer fires
+        Entry prev; // Neighbours in the bucket list; null while not scheduled
+        Entry next;
+
+        boolean isScheduled() {
+            return next != null;
+        }
+    }
+
+    public TimingWheel(long tickMillis, long nowMillis) {
+        this.tickMillis = tickMillis;
+        this.currentTick = nowMillis / tickMillis;
+        for (Entry[] level : buckets) {
+            for (int slot = 0; slot < SLOTS; slot++) {
+                Entry sentinel = new Entry();
+                sentinel.prev = sentinel.next = sentinel;
+                level[slot] = sentinel;
+            }
+        }
+    }
+
+    // Schedules a timer to fire at deadlineMillis; a deadline that has passed fires on the next advance
+    public synchronized void add(E entry, long deadlineMillis) {
+        if (entry.isScheduled()) {
+            unlink(entry);
+        }
+        entry.expiryTick = Math.max(Math.floorDiv(deadlineMillis, tickMillis), currentTick + 1);
+        place(entry);
+        size++;
+    }
+
+    // Cancels a timer; returns false if it was not scheduled, for example because it has already fired
+    public synchronized boolean cancel(E entry) {
+        if (!entry.isScheduled()) {
+            return false;
+        }
+        unlink(entry);
+        size--;
+        return true;
+    }
+
+    // Advances the clock to nowMillis and returns the timers that fired, in deadline order
+    @SuppressWarnings("unchecked")
+    public synchronized List<E> advance(long nowMillis) {
+        List<E> expired = new ArrayList<>();
+        long target = nowMillis / tickMillis;
+        while (currentTick < target && size > 0) {
+            currentTick++;
+            // Cascade from the top so that a timer can move down more than one level in the same tick
+            for (int level = LEVELS - 1; level > 0; level--) {
+                if ((currentTick & ((1L << (LEVEL_BITS * level)) - 1)) == 0) {
+                    Entry sentinel = buckets[level][slot(currentTick, level)];
+                    while (sentinel.next != sentinel) {
+                        Entry entry = sentinel.next;
+                        unlink(entry);
+                        place(entry);
+                    }
+                }
+            }
+            Entry sentinel = buckets[0][slot(currentTick, 0)];
+            while (sentinel.next != sentinel) {
+                Entry entry = sentinel.next;
+                unlink(entry);
+                size--;
+                expired.add((E) entry);
+            }
+        }
+        currentTick = Math.max(currentTick, target); // An empty wheel skips the idle ticks
+        return expired;
+    }
+
+    public synchronized int size() {
+        return size;
+    }
+
+    // Puts a timer in the bucket of the lowest level that covers its distance; a timer already due goes in the
+    // current tick's level-0 bucket, which is the next one collected when cascading into it
+    private void place(Entry entry) {
+        long expiry = Math.min(entry.expiryTick, currentTick + SPAN - 1);
+        long distance = Math.max(expiry - currentTick, 0);
+        int level = 0;
+        while (level < LEVELS - 1 && distance >= 1L << (LEVEL_BITS * (level + 1))) {
+            level++;
+        }
+        Entry sentinel = buckets[level][slot(Math.max(expiry, currentTick), level)];
+        entry.prev = sentinel.prev;
+        entry.next = sentinel;
+        sentinel.prev.next = entry;
+        sentinel.prev = entry;
+    }
+
+    private static int slot(long tick, int level) {
+        return (int) (tick >>> (LEVEL_BITS * level)) & SLOT_MASK;
+    }
+
+    private static void unlink(Entry entry) {
+        entry.prev.next = entry.next;
+        entry.next.prev = entry.prev;
+        entry.prev = entry.next = null;
+    }
+}
@@ -0,0 +1,41 @@
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+
+// Records the requests a BookingServer (or ShardRouter) receives, for WorkloadHarness to replay. On when the JVM is
+// started with -Dflight.trace=<file>. Each request is one line: microseconds since recording started, a tab, and the
+// request line as received.
+public class TraceRecorder implements AutoCloseable {
+    static final String FILE_NAME = System.getProperty("flight.trace"); // Trace to record to, or null
+
+    private final BufferedWriter writer;
+    private final long start = System.nanoTime();
+
+    public TraceRecorder(String fileName) throws IOException {
+        writer = Files.newBufferedWriter(Paths.get(fileName), StandardCharsets.UTF_8);
+    }
+
+    // Appends a request; a trace that can no longer be written is closed and the requests are served unrecorded
+    public synchronized void record(String request) {
+        try {
+            writer.write(Long.toString((System.nanoTime() - start) / 1000));
+            writer.write('\t');
+            writer.write(request);
+            writer.write('\n');
+        } catch (IOException e) {
+            System.err.println("Failed to write trace, recording stopped: " + e.getMessage());
+            close();
+        }
+    }
+
+    @Override
+    public synchronized void close() {
+        try {
+            writer.close();
+        } catch (IOException e) {
+            System.err.println("Failed to close trace: " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,230 @@
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+
+// Waiting list of one flight in promotion order, set by the waitlist policy.
+//
+// Tickets live in an indexed binary heap keyed by priority class and arrival number; each ticket remembers its
+// heap index in manifestIndex, so adding, promoting and removing any ticket take O(log n). A heap cannot count
+// the tickets ahead of one, so every priority class also keeps a Fenwick tree over arrival numbers: a ticket's
+// position is the size of the better classes plus the earlier arrivals in its own class, also O(log n).
+// Not thread-safe: the owning flight's lock guards it.
+public class Waitlist implements Iterable<Ticket> {
+    // Order in which waitlisted tickets are promoted
+    public enum Policy {
+        FIFO, // Request time only
+        PRIORITY // Business fares first, then higher loyalty tiers, then request time
+    }
+
+    static final Policy POLICY = readPolicy(System.getProperty("flight.waitlist.policy", "FIFO")); // Read once at startup
+    private static final Ticket.LoyaltyTier[] TIERS = Ticket.LoyaltyTier.values();
+    private static final int CLASSES = 2 * TIERS.length; // Priority classes: fare class x loyalty tier
+    private static final int MIN_ARRIVALS = 16; // Smallest arrival range of the Fenwick trees
+    private static final Ticket[] NO_TICKETS = new Ticket[0];
+    static final Waitlist EMPTY = new Waitlist(); // Shared by flights until their first waitlisted ticket; never added to
+
+    private Ticket[] heap = NO_TICKETS; // Entries [0, size) form a min-heap on (priority class, arrival)
+    private int size; // Number of tickets
+    private int nextArrival; // Arrival number given to the next ticket
+    private int[][] arrivals = new int[CLASSES][]; // Per class, a Fenwick tree counting its tickets by arrival; null until used
+    private final int[] classSizes = new int[CLASSES]; // Number of tickets per class
+
+    // Parses the flight.waitlist.policy property; an unknown policy is reported and FIFO used, since this runs during
+    // class initialization, where an exception would leave the class unusable
+    static Policy readPolicy(String name) {
+        try {
+            return Policy.valueOf(name.trim().toUpperCase());
+        } catch (IllegalArgumentException e) {
+            System.err.println("Unknown waitlist policy '" + name + "', expected one of " + Arrays.toString(Policy.values())
+                    + "; using FIFO");
+            return Policy.FIFO;
+        }
+    }
+
+    // Adds a ticket behind every ticket of its class
+    public void add(Ticket ticket) {
+        if (nextArrival == arrivalCapacity()) {
+            renumber();
+        }
+        ticket.waitlistArrival = nextArrival++;
+        int priorityClass = priorityClass(ticket);
+        if (arrivals[priorityClass] == null) {
+            arrivals[priorityClass] = new int[arrivalCapacity() + 1];
+        }
+        count(priorityClass, ticket.waitlistArrival, 1);
+
+        if (size == heap.length) {
+            heap = Arrays.copyOf(heap, Math.max(4, size * 2));
+        }
+        heap[size] = ticket;
+        ticket.manifestIndex = size;
+        siftUp(size++);
+    }
+
+    // Removes a ticket from anywhere in the list; returns false if it is not in this list
+    public boolean remove(Ticket ticket) {
+        int index = ticket.manifestIndex;
+        if (index < 0 || index >= size || heap[index] != ticket) {
+            return false;
+        }
+        count(priorityClass(ticket), ticket.waitlistArrival, -1);
+
+        Ticket last = heap[--size];
+        heap[size] = null;
+        if (index < size) {
+            heap[index] = last;
+            last.manifestIndex = index;
+            siftDown(index);
+            siftUp(last.manifestIndex);
+        }
+        if (size == 0) {
+            nextArrival = 0; // Every tree is back to zero, so arrival numbers can start over
+        }
+        return true;
+    }
+
+    // Returns the next ticket to promote, or null if there is none
+    public Ticket peek() {
+        return size == 0 ? null : heap[0];
+    }
+
+    // Removes and returns the next ticket to promote, or null if there is none
+    public Ticket poll() {
+        Ticket ticket = peek();
+        if (ticket != null) {
+            remove(ticket);
+        }
+        return ticket;
+    }
+
+    // Returns the 1-based place of a ticket in promotion order, or 0 if it is not in this list
+    public int position(Ticket ticket) {
+        int index = ticket.manifestIndex;
+        if (index < 0 || index >= size || heap[index] != ticket) {
+            return 0;
+        }
+        int priorityClass = priorityClass(ticket);
+        int ahead = 0;
+        for (int c = 0; c < priorityClass; c++) {
+            ahead += classSizes[c];
+        }
+        int[] tree = arrivals[priorityClass];
+        for (int i = ticket.waitlistArrival; i > 0; i -= i & -i) {
+            ahead += tree[i]; // Tickets of this class with a smaller arrival number
+        }
+        return ahead + 1;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    // Iterates a copy of the tickets in promotion order
+    @Override
+    public Iterator<Ticket> iterator() {
+        return Arrays.asList(sortedTickets()).iterator();
+    }
+
+    // Class of a ticket under the current policy; lower classes are promoted first
+    static int priorityClass(Ticket ticket) {
+        if (POLICY == Policy.FIFO) {
+            return 0;
+        }
+        int fareClass = ticket.getCabin() == SeatMap.Cabin.BUSINESS ? 0 : 1;
+        return fareClass * TIERS.length + TIERS.length - 1 - ticket.getLoyaltyTier().ordinal();
+    }
+
+    private static int compare(Ticket a, Ticket b) {
+        int byClass = Integer.compare(priorityClass(a), priorityClass(b));
+        return byClass != 0 ? byClass : Integer.compare(a.waitlistArrival, b.waitlistArrival);
+    }
+
+    private void siftUp(int index) {
+        Ticket ticket = heap[index];
+        while (index > 0) {
+            int parent = (index - 1) >>> 1;
+            if (compare(ticket, heap[parent]) >= 0) {
+                break;
+            }
+            heap[index] = heap[parent];
+            heap[index].manifestIndex = index;
+            index = parent;
+        }
+        heap[index] = ticket;
+        ticket.manifestIndex = index;
+    }
+
+    private void siftDown(int index) {
+        Ticket ticket = heap[index];
+        int half = size >>> 1;
+        while (index < half) {
+            int child = 2 * index + 1;
+            if (child + 1 < size && compare(heap[child + 1], heap[child]) < 0) {
+                child++;
+            }
+            if (compare(ticket, heap[child]) <= 0) {
+                break;
+            }
+            heap[index] = heap[child];
+            heap[index].manifestIndex = index;
+            index = child;
+        }
+        heap[index] = ticket;
+        ticket.manifestIndex = index;
+    }
+
+    // Adds delta to a class's size and to its Fenwick tree at an arrival number
+    private void count(int priorityClass, int arrival, int delta) {
+        classSizes[priorityClass] += delta;
+        int[] tree = arrivals[priorityClass];
+        for (int i = arrival + 1; i < tree.length; i += i & -i) {
+            tree[i] += delta;
+        }
+    }
+
+    // Number of arrival numbers the trees cover
+    private int arrivalCapacity() {
+        for (int[] tree : arrivals) {
+            if (tree != null) {
+                return tree.length - 1;
+            }
+        }
+        return Math.max(MIN_ARRIVALS, Integer.highestOneBit(Math.max(1, size) * 2) * 2);
+    }
+
+    // Renumbers the waiting tickets 0..size-1 in arrival order and rebuilds the trees with room for as many new
+    // arrivals again. Relative order is kept, so the heap stays valid; it runs once per size arrivals at most.
+    private void renumber() {
+        Ticket[] byArrival = Arrays.copyOf(heap, size);
+        Arrays.sort(byArrival, Comparator.comparingInt(ticket -> ticket.waitlistArrival));
+        int capacity = Math.max(MIN_ARRIVALS, Integer.highestOneBit(Math.max(1, size) * 2) * 2);
+        for (int c = 0; c < CLASSES; c++) {
+            arrivals[c] = classSizes[c] == 0 ? null : new int[capacity + 1];
+        }
+        for (int i = 0; i < size; i++) {
+            Ticket ticket = byArrival[i];
+            ticket.waitlistArrival = i;
+            arrivals[priorityClass(ticket)][i + 1]++;
+        }
+        for (int[] tree : arrivals) {
+            // Turn the counts into a Fenwick tree in place, in O(capacity)
+            for (int i = 1; tree != null && i < tree.length; i++) {
+                int parent = i + (i & -i);
+                if (parent < tree.length) {
+                    tree[parent] += tree[i];
+                }
+            }
+        }
+        nextArrival = size;
+    }
+
+    private Ticket[] sortedTickets() {
+        Ticket[] tickets = Arrays.copyOf(heap, size);
+        Arrays.sort(tickets, Waitlist::compare);
+        return tickets;
+    }
+}
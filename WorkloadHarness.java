@@ -0,0 +1,367 @@
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+// Load-test harness that drives AnnualFlightScheduler in-process with realistic, repeatable workloads.
+// Usage:
+//   java WorkloadHarness schedule <csv> [days=365] [flightsPerDay=20] [fill=0.8] [seed=1]
+//       Writes a skewed schedule with passengers (see GenerateFlightsCsv.generateSkewed), starting 2025-01-01.
+//   java WorkloadHarness trace <csv> <trace> [ops=100000] [rate=1000] [skew=1.0] [bookPercent=40] [cancelPercent=10]
+//                              [searchPercent=20] [seed=1]
+//       Writes a trace of bookings, cancellations, week searches and status lookups (the rest) against the schedule.
+//       Flights are picked with a Zipf distribution of exponent skew over a shuffled popularity order; arrivals are
+//       Poisson at rate requests per second. Cancellations and lookups go to trace bookings and schedule passengers.
+//   java WorkloadHarness replay <csv> <trace> [threads=8] [rate=0] [speed=0]
+//       Replays a trace on a copy of the schedule and reports throughput and latency percentiles per request type.
+//       rate paces the requests at that many per second and speed at the trace's own timing sped up that many
+//       times; with neither they run back to back. When paced, latency counts from when a request was due, so time
+//       spent queued behind a slow request is included rather than hidden.
+// Traces use the format TraceRecorder writes, so traffic recorded from a BookingServer with -Dflight.trace replays too;
+// requests other than BOOK, CANCEL, SEARCH and STATUS are skipped, as hold IDs do not carry over between runs.
+// Replay a recorded trace on a copy of the snapshot the server started from: the server overwrites it when it stops.
+// A passenger's requests all run on the same thread, in trace order.
+public class WorkloadHarness {
+    static final LocalDate START_DATE = LocalDate.of(2025, 1, 1); // First day of a generated schedule
+    static final int SAMPLE_SIZE = 100_000; // Schedule tickets kept for the trace to cancel and look up
+    static int days = 365; // Days of a generated schedule
+    static int flightsPerDay = 20; // Flights on an ordinary weekday
+    static double fill = 0.8; // Average share of seats booked
+    static long seed = 1; // Seed of every random choice, so runs can be repeated
+    static int ops = 100_000; // Requests in a generated trace
+    static double rate = 0; // Requests per second; the trace's arrival rate, or the replay pace
+    static double skew = 1.0; // Zipf exponent of flight popularity
+    static int bookPercent = 40; // Shares of a generated trace; status lookups take the rest
+    static int cancelPercent = 10;
+    static int searchPercent = 20;
+    static int threads = 8; // Replay threads
+    static double speed = 0; // Replay speed relative to the trace's timing
+
+    private static final String[] TYPES = {"BOOK", "CANCEL", "SEARCH", "STATUS"};
+    private static final Metrics.Histogram[] latencies = {new Metrics.Histogram(), new Metrics.Histogram(),
+            new Metrics.Histogram(), new Metrics.Histogram()};
+    private static final AtomicLong[] bookResults = new AtomicLong[BatchOperation.Result.values().length];
+    private static final AtomicLong errors = new AtomicLong(); // Requests that threw
+    private static final AtomicLong lateNanos = new AtomicLong(); // Most a paced request started after it was due
+
+    // One request of a trace
+    private static class Request {
+        final long offsetNanos; // When it arrived, from the start of the trace
+        final int type; // Index in TYPES
+        final String[] fields; // The request line split on tabs
+
+        Request(long offsetNanos, int type, String[] fields) {
+            this.offsetNanos = offsetNanos;
+            this.type = type;
+            this.fields = fields;
+        }
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        if (args.length < 2) {
+            System.err.println("Usage: java WorkloadHarness schedule|trace|replay <csv> [<trace>] [name=value...]");
+            return;
+        }
+        int positional = args[0].equals("schedule") ? 2 : 3;
+        for (int i = positional; i < args.length; i++) {
+            String[] kv = args[i].split("=");
+            switch (kv[0]) {
+                case "days": days = Integer.parseInt(kv[1]); break;
+                case "flightsPerDay": flightsPerDay = Integer.parseInt(kv[1]); break;
+                case "fill": fill = Double.parseDouble(kv[1]); break;
+                case "seed": seed = Long.parseLong(kv[1]); break;
+                case "ops": ops = Integer.parseInt(kv[1]); break;
+                case "rate": rate = Double.parseDouble(kv[1]); break;
+                case "skew": skew = Double.parseDouble(kv[1]); break;
+                case "bookPercent": bookPercent = Integer.parseInt(kv[1]); break;
+                case "cancelPercent": cancelPercent = Integer.parseInt(kv[1]); break;
+                case "searchPercent": searchPercent = Integer.parseInt(kv[1]); break;
+                case "threads": threads = Integer.parseInt(kv[1]); break;
+                case "speed": speed = Double.parseDouble(kv[1]); break;
+                default: throw new IllegalArgumentException("Unknown parameter: " + kv[0]);
+            }
+        }
+
+        switch (args[0]) {
+            case "schedule":
+                GenerateFlightsCsv.generateSkewed(args[1], START_DATE, START_DATE.plusDays(days - 1), flightsPerDay, fill, seed);
+                System.out.println("Wrote a schedule of " + days + " days to " + args[1]);
+                break;
+            case "trace":
+                writeTrace(Paths.get(args[1]), Paths.get(args[2]));
+                break;
+            case "replay":
+                replay(Paths.get(args[1]), Paths.get(args[2]));
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown mode: " + args[0]);
+        }
+    }
+
+    // Generates a trace against the flights and passengers of a schedule
+    static void writeTrace(Path csvFile, Path traceFile) throws IOException {
+        Random random = new Random(seed);
+        List<String> flightIDs = new ArrayList<>();
+        List<String[]> scheduleTickets = new ArrayList<>(); // Sample of {passport, flightID} from the schedule
+        long seen = 0;
+        try (BufferedReader reader = Files.newBufferedReader(csvFile, StandardCharsets.UTF_8)) {
+            reader.readLine(); // Header
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String[] columns = line.split(",", -1);
+                if (columns.length < 5) {
+                    continue;
+                }
+                flightIDs.add(columns[0]);
+                for (String column : new String[]{columns[3], columns[4]}) {
+                    for (int open = column.indexOf('('); open >= 0; open = column.indexOf('(', open + 1)) {
+                        String[] ticket = {column.substring(open + 1, column.indexOf(')', open)), columns[0]};
+                        // Reservoir sampling keeps every ticket equally likely however large the schedule
+                        seen++;
+                        if (scheduleTickets.size() < SAMPLE_SIZE) {
+                            scheduleTickets.add(ticket);
+                        } else if (random.nextLong(seen) < SAMPLE_SIZE) {
+                            scheduleTickets.set(random.nextInt(SAMPLE_SIZE), ticket);
+                        }
+                    }
+                }
+            }
+        }
+        if (flightIDs.isEmpty()) {
+            throw new IOException(csvFile + " has no flights");
+        }
+
+        // Flight i of a shuffled order is picked with a probability proportional to 1 / (i + 1)^skew
+        String[] popular = flightIDs.toArray(new String[0]);
+        for (int i = popular.length - 1; i > 0; i--) {
+            int j = random.nextInt(i + 1);
+            String swap = popular[i];
+            popular[i] = popular[j];
+            popular[j] = swap;
+        }
+        double[] cumulative = new double[popular.length];
+        double total = 0;
+        for (int i = 0; i < popular.length; i++) {
+            total += 1 / Math.pow(i + 1, skew);
+            cumulative[i] = total;
+        }
+
+        double arrivalRate = rate > 0 ? rate : 1000;
+        List<String[]> traceTickets = new ArrayList<>(); // {passport, flightID} booked by the trace and not canceled
+        long offsetMicros = 0;
+        try (BufferedWriter writer = Files.newBufferedWriter(traceFile, StandardCharsets.UTF_8)) {
+            for (int i = 0; i < ops; i++) {
+                offsetMicros += (long) (-Math.log(1 - random.nextDouble()) / arrivalRate * 1e6);
+                int dice = random.nextInt(100);
+                String flightID = popular[pick(cumulative, random.nextDouble() * total)];
+                String request;
+                if (dice < bookPercent) {
+                    String passport = "T" + i;
+                    request = "BOOK\t" + flightID + "\tTrace Passenger\t" + passport;
+                    traceTickets.add(new String[]{passport, flightID});
+                } else if (dice < bookPercent + cancelPercent) {
+                    String[] ticket = takeTicket(random, traceTickets, scheduleTickets);
+                    request = ticket == null ? "CANCEL\t" + flightID + "\tT-none" : "CANCEL\t" + ticket[1] + "\t" + ticket[0];
+                } else if (dice < bookPercent + cancelPercent + searchPercent) {
+                    LocalDate from = FlightPartitions.dateOf(flightID);
+                    request = "SEARCH\t" + from + "\t" + from.plusDays(6);
+                } else {
+                    List<String[]> tickets = !traceTickets.isEmpty() && (scheduleTickets.isEmpty() || random.nextBoolean())
+                            ? traceTickets : scheduleTickets;
+                    request = "STATUS\t" + (tickets.isEmpty() ? "T-none" : tickets.get(random.nextInt(tickets.size()))[0]);
+                }
+                writer.write(offsetMicros + "\t" + request + "\n");
+            }
+        }
+        System.out.println("Wrote " + ops + " requests over " + flightIDs.size() + " flights to " + traceFile);
+    }
+
+    // Returns the index of the first cumulative weight above target
+    private static int pick(double[] cumulative, double target) {
+        int index = Arrays.binarySearch(cumulative, target);
+        return Math.min(index >= 0 ? index : -index - 1, cumulative.length - 1);
+    }
+
+    // Removes and returns a ticket to cancel: one the trace booked, or one from the schedule; null if none is left
+    private static String[] takeTicket(Random random, List<String[]> traceTickets, List<String[]> scheduleTickets) {
+        List<String[]> tickets = !traceTickets.isEmpty() && (scheduleTickets.isEmpty() || random.nextInt(10) < 7)
+                ? traceTickets : scheduleTickets;
+        if (tickets.isEmpty()) {
+            return null;
+        }
+        int index = random.nextInt(tickets.size());
+        String[] ticket = tickets.get(index);
+        tickets.set(index, tickets.get(tickets.size() - 1));
+        tickets.remove(tickets.size() - 1);
+        return ticket;
+    }
+
+    // Replays a trace on a copy of a schedule and prints the results
+    static void replay(Path csvFile, Path traceFile) throws IOException, InterruptedException {
+        List<Request> requests = readTrace(traceFile);
+        if (requests.isEmpty()) {
+            System.err.println(traceFile + " has no requests to replay");
+            return;
+        }
+        List<List<Request>> perThread = new ArrayList<>();
+        List<List<Long>> indexes = new ArrayList<>(); // Position of each request in the trace, for rate pacing
+        for (int i = 0; i < threads; i++) {
+            perThread.add(new ArrayList<>());
+            indexes.add(new ArrayList<>());
+        }
+        for (int i = 0; i < requests.size(); i++) {
+            Request request = requests.get(i);
+            // A passenger's requests share a thread so that a cancellation or lookup follows its booking
+            String key = request.type == 0 ? request.fields[3] : request.type == 1 ? request.fields[2]
+                    : request.type == 3 ? request.fields[1] : null;
+            int thread = key == null ? i % threads : (key.hashCode() & Integer.MAX_VALUE) % threads;
+            perThread.get(thread).add(request);
+            indexes.get(thread).add((long) i);
+        }
+
+        Path dir = Files.createTempDirectory("flight-replay");
+        Path copy = dir.resolve("flights.csv");
+        Files.copy(csvFile, copy);
+        PrintStream console = System.out;
+        PrintStream errorConsole = System.err;
+        PrintStream muted = new PrintStream(OutputStream.nullOutputStream());
+        System.setOut(muted); // Loading and booking print progress and rejections; keep them out of the numbers
+        System.setErr(muted);
+        long loadStart = System.nanoTime();
+        Main.afs = new AnnualFlightScheduler(copy.toString(), dir.resolve("flights.journal").toString());
+        long loadNanos = System.nanoTime() - loadStart;
+        for (int i = 0; i < bookResults.length; i++) {
+            bookResults[i] = new AtomicLong();
+        }
+
+        List<Thread> workers = new ArrayList<>();
+        long start = System.nanoTime() + 10_000_000; // Every worker is running by the time the first request is due
+        for (int t = 0; t < threads; t++) {
+            List<Request> mine = perThread.get(t);
+            List<Long> myIndexes = indexes.get(t);
+            Thread worker = new Thread(() -> {
+                for (int i = 0; i < mine.size(); i++) {
+                    Request request = mine.get(i);
+                    long due = rate > 0 ? start + (long) (myIndexes.get(i) * 1e9 / rate)
+                            : speed > 0 ? start + (long) (request.offsetNanos / speed) : 0;
+                    long now = System.nanoTime();
+                    while (due > now) {
+                        LockSupport.parkNanos(due - now);
+                        now = System.nanoTime();
+                    }
+                    if (due > 0) {
+                        lateNanos.accumulateAndGet(now - due, Math::max);
+                    }
+                    long begin = due > 0 ? due : now;
+                    try {
+                        execute(request);
+                    } catch (RuntimeException e) {
+                        errors.incrementAndGet();
+                    }
+                    latencies[request.type].record(System.nanoTime() - begin);
+                }
+            }, "replay-" + t);
+            workers.add(worker);
+            worker.start();
+        }
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        double elapsed = (System.nanoTime() - start) / 1e9;
+        Main.afs.close();
+        System.setOut(console);
+        System.setErr(errorConsole);
+
+        System.out.printf("Replayed %d requests of %s on %d threads (%s); schedule loaded in %.1f s%n", requests.size(),
+                traceFile, threads, rate > 0 ? "paced at " + rate + "/s" : speed > 0 ? "trace timing x" + speed : "unpaced",
+                loadNanos / 1e9);
+        System.out.printf("%d requests in %.1f s: %.0f requests/s, %d errors%n", requests.size(), elapsed,
+                requests.size() / elapsed, errors.get());
+        for (int type = 0; type < TYPES.length; type++) {
+            print(TYPES[type], latencies[type], elapsed);
+        }
+        StringBuilder results = new StringBuilder("BOOK results:");
+        for (BatchOperation.Result result : BatchOperation.Result.values()) {
+            results.append(' ').append(result).append('=').append(bookResults[result.ordinal()].get());
+        }
+        System.out.println(results);
+        if (rate > 0 || speed > 0) {
+            System.out.printf("Latest start behind schedule: %.1f ms%n", lateNanos.get() / 1e6);
+        }
+        if (Metrics.ENABLED) {
+            System.out.print(Metrics.report());
+        }
+    }
+
+    // Reads the requests of a trace that can be replayed
+    private static List<Request> readTrace(Path traceFile) throws IOException {
+        List<Request> requests = new ArrayList<>();
+        try (BufferedReader reader = Files.newBufferedReader(traceFile, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                int tab = line.indexOf('\t');
+                if (tab < 0) {
+                    continue;
+                }
+                String[] fields = line.substring(tab + 1).split("\t", -1);
+                int type = Arrays.asList(TYPES).indexOf(fields[0]);
+                int required = type == 0 ? 4 : type == 1 || type == 2 ? 3 : 2;
+                if (type >= 0 && fields.length >= required) {
+                    requests.add(new Request(Long.parseLong(line.substring(0, tab)) * 1000, type, fields));
+                }
+            }
+        }
+        return requests;
+    }
+
+    // Runs one request against the scheduler the way BookingServer does
+    private static void execute(Request request) {
+        String[] fields = request.fields;
+        switch (request.type) {
+            case 0: {
+                SeatMap.Cabin cabin = fields.length > 4 && !fields[4].isEmpty()
+                        ? SeatMap.Cabin.valueOf(fields[4].toUpperCase()) : SeatMap.Cabin.ECONOMY;
+                BatchOperation.Result result = Main.afs.applyBatchAsync(
+                        List.of(BatchOperation.book(fields[1], fields[3], fields[2], cabin))).join().get(0);
+                bookResults[result.ordinal()].incrementAndGet();
+                break;
+            }
+            case 1:
+                Main.afs.applyBatchAsync(List.of(BatchOperation.cancel(fields[1], fields[2]))).join();
+                break;
+            case 2: {
+                LocalDate from = LocalDate.parse(fields[1], AnnualFlightScheduler.formatter);
+                LocalDate to = LocalDate.parse(fields[2], AnnualFlightScheduler.formatter);
+                BookingServer.searchResponse(from, to, fields.length > 3 && fields[3].equals("vacant"));
+                break;
+            }
+            default: {
+                Passenger passenger = Main.afs.getPassengerInfo(fields[1]);
+                if (passenger != null) {
+                    for (Ticket ticket : passenger.getTickets().toArray(new Ticket[0])) {
+                        ticket.getFlight().getTicketState(ticket);
+                    }
+                }
+            }
+        }
+    }
+
+    private static void print(String name, Metrics.Histogram latency, double elapsed) {
+        System.out.printf("%-7s %9d requests %9.0f/s  mean %8.1f us  p50 %8.1f us  p99 %8.1f us  p999 %8.1f us  max %8.1f us%n",
+                name, latency.getCount(), latency.getCount() / elapsed, latency.getMean() / 1e3,
+                latency.getPercentile(50) / 1e3, latency.getPercentile(99) / 1e3, latency.getPercentile(99.9) / 1e3,
+                latency.getMax() / 1e3);
+    }
+}